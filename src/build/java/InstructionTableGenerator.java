@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Build step that turns instruction_set.csv and exceptions.json (the inputs of scripts/generate_json_from_csv.py) into
+ * eypdc.assembler.InstructionTables, a class holding the opcode tables as static primitive arrays. cycle_counts.csv has
+ * the same columns as instruction_set.csv and gives the bus cycles of every opcode; an opcode without a cycle count,
+ * or the other way round, fails the build. The immediate operand of the loads, compares and arithmetic on D, X, Y
+ * and SP is 16 bits wide; every other one is a byte. Runs with the single-file source launcher, so it has no
+ * dependencies of its own.
+ *
+ * <pre>java InstructionTableGenerator.java instruction_set.csv exceptions.json cycle_counts.csv output.java</pre>
+ */
+public class InstructionTableGenerator
+{
+    // Same order as the CSV columns and as eypdc.assembler.AddressingMode
+    private static final List<String> ADDRESSING_MODES = List.of("IMM", "DIR", "IND,X", "IND,Y", "EXT", "INH", "REL");
+    private static final Set<String> WIDE_IMMEDIATES = Set.of("addd", "cpd", "cpx", "cpy", "ldd", "lds", "ldx", "ldy",
+                                                              "subd");
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 4)
+            throw new IllegalArgumentException(
+                    "Usage: InstructionTableGenerator <csv> <exceptions.json> <cycle_counts.csv> <output>");
+
+        Map<String, Object> exceptions = new JsonParser(Files.readString(Paths.get(args[1]))).parseObject();
+
+        // Sorted by mnemonic, which fixes the mnemonic ids
+        Map<String, Map<String, String>> addressingModes = new TreeMap<>();
+        Map<String, Integer> specialOperands = new TreeMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : readCsv(Paths.get(args[0])).entrySet())
+        {
+            if (!exceptions.containsKey(entry.getKey())) addressingModes.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Object> entry : exceptions.entrySet())
+        {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> exception = (Map<String, Object>) entry.getValue();
+            @SuppressWarnings("unchecked")
+            Map<String, String> modes = (Map<String, String>) (Map<String, ?>) exception.get("addressingModes");
+            addressingModes.put(entry.getKey(), modes);
+            specialOperands.put(entry.getKey(), Integer.parseInt((String) exception.get("operands")));
+        }
+
+        Map<String, Map<String, String>> cycles = readCsv(Paths.get(args[2]));
+        for (Map.Entry<String, Map<String, String>> entry : addressingModes.entrySet())
+        {
+            Map<String, String> mnemonicCycles = cycles.getOrDefault(entry.getKey(), Map.of());
+            if (!mnemonicCycles.keySet().equals(entry.getValue().keySet()))
+                throw new IllegalArgumentException("Cycle counts of " + entry.getKey() + " are for " +
+                                                   mnemonicCycles.keySet() + " but its opcodes are for " +
+                                                   entry.getValue().keySet());
+        }
+
+        Path output = Paths.get(args[3]);
+        Files.createDirectories(output.getParent());
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8))
+        {
+            write(writer, addressingModes, specialOperands, cycles);
+        }
+    }
+
+    /**
+     * @return the non-empty cells of every row, by mnemonic and addressing mode.
+     */
+    private static Map<String, Map<String, String>> readCsv(Path path) throws IOException
+    {
+        Map<String, Map<String, String>> rows = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8))
+        {
+            if (line.isBlank()) continue;
+            String[] split = line.strip().split(",", -1);
+            Map<String, String> modes = new LinkedHashMap<>();
+            for (int i = 1; i < split.length; i++)
+            {
+                if (!split[i].isEmpty()) modes.put(ADDRESSING_MODES.get(i - 1), split[i]);
+            }
+            rows.put(split[0], modes);
+        }
+        return rows;
+    }
+
+    private static void write(Writer writer, Map<String, Map<String, String>> addressingModes,
+                              Map<String, Integer> specialOperands, Map<String, Map<String, String>> cycles)
+            throws IOException
+    {
+        StringBuilder mnemonics = new StringBuilder();
+        StringBuilder opcodes = new StringBuilder();
+        StringBuilder opcodeSizes = new StringBuilder();
+        StringBuilder cycleCounts = new StringBuilder();
+        StringBuilder operands = new StringBuilder();
+        StringBuilder immediateSizes = new StringBuilder();
+
+        for (Map.Entry<String, Map<String, String>> entry : addressingModes.entrySet())
+        {
+            String mnemonic = entry.getKey();
+            mnemonics.append("            \"").append(mnemonic).append("\",\n");
+            opcodes.append("            ");
+            opcodeSizes.append("            ");
+            cycleCounts.append("            ");
+            for (String mode : ADDRESSING_MODES)
+            {
+                String opcode = entry.getValue().get(mode);
+                if (opcode == null)
+                {
+                    opcodes.append("-1, ");
+                    opcodeSizes.append("0, ");
+                    cycleCounts.append("0, ");
+                    continue;
+                }
+                opcode = opcode.replaceAll("\\s", "");
+                opcodes.append("0x").append(opcode).append(", ");
+                opcodeSizes.append(opcode.length() / 2).append(", ");
+                cycleCounts.append(Integer.parseInt(cycles.get(mnemonic).get(mode).strip())).append(", ");
+            }
+            opcodes.append("// ").append(mnemonic).append('\n');
+            opcodeSizes.append("// ").append(mnemonic).append('\n');
+            cycleCounts.append("// ").append(mnemonic).append('\n');
+            operands.append("            ").append(specialOperands.getOrDefault(mnemonic, 0)).append(", // ")
+                    .append(mnemonic).append('\n');
+            int immediateSize = !entry.getValue().containsKey("IMM") ? 0 : WIDE_IMMEDIATES.contains(mnemonic) ? 2 : 1;
+            immediateSizes.append("            ").append(immediateSize).append(", // ").append(mnemonic).append('\n');
+        }
+
+        writer.write("package eypdc.assembler;\n\n" +
+                     "/**\n" +
+                     " * Generated from instruction_set.csv, exceptions.json and cycle_counts.csv by\n" +
+                     " * InstructionTableGenerator. Do not edit.\n" +
+                     " * Opcode tables are indexed by {@code id * AddressingMode.count() + mode.ordinal()}.\n" +
+                     " */\n" +
+                     "final class InstructionTables\n" +
+                     "{\n" +
+                     "    static final String[] MNEMONICS = {\n" + mnemonics + "    };\n\n" +
+                     "    static final int[] OPCODES = {\n" + opcodes + "    };\n\n" +
+                     "    static final byte[] OPCODE_SIZES = {\n" + opcodeSizes + "    };\n\n" +
+                     "    static final byte[] CYCLES = {\n" + cycleCounts + "    };\n\n" +
+                     "    static final byte[] SPECIAL_OPERANDS = {\n" + operands + "    };\n\n" +
+                     "    // Bytes of the immediate operand by mnemonic id, 0 without immediate addressing\n" +
+                     "    static final byte[] IMMEDIATE_SIZES = {\n" + immediateSizes + "    };\n\n" +
+                     "    private InstructionTables()\n" +
+                     "    {\n" +
+                     "    }\n" +
+                     "}\n");
+    }
+
+    /**
+     * Just enough JSON for exceptions.json: objects, strings and numbers (kept as their text).
+     */
+    private static class JsonParser
+    {
+        private final String text;
+        private int position = 0;
+
+        JsonParser(String text)
+        {
+            this.text = text;
+        }
+
+        Map<String, Object> parseObject()
+        {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}')
+            {
+                position++;
+                return object;
+            }
+            do
+            {
+                String key = parseString();
+                expect(':');
+                object.put(key, parseValue());
+            }
+            while (consumeIf(','));
+            expect('}');
+            return object;
+        }
+
+        private Object parseValue()
+        {
+            char c = peek();
+            if (c == '{') return parseObject();
+            if (c == '"') return parseString();
+            int start = position;
+            while (position < text.length() && "-+.0123456789eE".indexOf(text.charAt(position)) != -1) position++;
+            if (start == position) throw error("Unexpected character '" + c + "'");
+            return text.substring(start, position);
+        }
+
+        private String parseString()
+        {
+            expect('"');
+            int start = position;
+            while (text.charAt(position) != '"')
+            {
+                if (text.charAt(position) == '\\') throw error("Escapes are not supported");
+                position++;
+            }
+            return text.substring(start, position++);
+        }
+
+        private char peek()
+        {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+            if (position == text.length()) throw error("Unexpected end of input");
+            return text.charAt(position);
+        }
+
+        private boolean consumeIf(char c)
+        {
+            if (peek() != c) return false;
+            position++;
+            return true;
+        }
+
+        private void expect(char c)
+        {
+            if (!consumeIf(c)) throw error("Expected '" + c + "'");
+        }
+
+        private IllegalArgumentException error(String message)
+        {
+            return new IllegalArgumentException(message + " at offset " + position + " of exceptions.json");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SourceGenerator.LINES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssemblerBenchmark
+{
+    private Assembler assembler;
+    private List<String> lines;
+    // Every 16th line replaced by an unknown mnemonic
+    private List<String> brokenLines;
+
+    // Second pass input. Resolving fixups overwrites their operand slots, so it can be repeated on the same lines.
+    private List<CompiledLine> compiledLines;
+    private SymbolTable symbols;
+    private FixupTable fixups;
+    private MemoryImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws CompileError
+    {
+        assembler = new Assembler();
+        lines = SourceGenerator.generate(assembler.getInstructionSet());
+        brokenLines = new ArrayList<>(lines);
+        for (int i = 8; i < brokenLines.size(); i += 16)
+        {
+            brokenLines.set(i, " XYZ 1");
+        }
+
+        compiledLines = new ArrayList<>(lines.size());
+        fixups = new FixupTable();
+        image = new MemoryImage();
+        symbols = assembler.firstPass(lines, compiledLines, fixups, image);
+    }
+
+    @Benchmark
+    public List<CompiledLine> firstPass() throws CompileError
+    {
+        List<CompiledLine> compiledLines = new ArrayList<>(lines.size());
+        assembler.firstPass(lines, compiledLines, new FixupTable(), new MemoryImage());
+        return compiledLines;
+    }
+
+    @Benchmark
+    public List<CompiledLine> secondPass() throws CompileError
+    {
+        assembler.secondPass(compiledLines, symbols, fixups, image);
+        return compiledLines;
+    }
+
+    @Benchmark
+    public AssemblyResult assembleCollectingErrors()
+    {
+        return assembler.assemble(brokenLines, true);
+    }
+}
@@ -0,0 +1,48 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reassembles the synthetic program after a one-line edit in its middle that changes the size of the line, so every
+ * later line moves. Compare with a full {@link AssemblerBenchmark#firstPass()} plus second pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalBenchmark
+{
+    private IncrementalAssembler incrementalAssembler;
+    private List<String> original;
+    private List<String> edited;
+    private boolean toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws CompileError
+    {
+        Assembler assembler = new Assembler();
+        original = SourceGenerator.generate(assembler.getInstructionSet());
+        edited = new ArrayList<>(original);
+        int middle = original.size() / 2;
+        while (!original.get(middle).startsWith(" ") || original.get(middle).isBlank()) middle++;
+        edited.add(middle, " NOP");
+
+        incrementalAssembler = new IncrementalAssembler(assembler);
+        incrementalAssembler.update(original);
+    }
+
+    @Benchmark
+    public MemoryImage editOneLine() throws CompileError
+    {
+        toggle = !toggle;
+        incrementalAssembler.update(toggle ? edited : original);
+        return incrementalAssembler.getImage();
+    }
+}
@@ -0,0 +1,93 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SourceGenerator.LINES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrinterBenchmark
+{
+    private Path outputDirectory;
+    private Printer printer;
+    private List<String> lines;
+    private List<CompiledLine> compiledLines;
+    private MemoryImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws CompileError, IOException
+    {
+        Assembler assembler = new Assembler();
+        lines = SourceGenerator.generate(assembler.getInstructionSet());
+        compiledLines = new ArrayList<>(lines.size());
+        FixupTable fixups = new FixupTable();
+        image = new MemoryImage();
+        SymbolTable symbols = assembler.firstPass(lines, compiledLines, fixups, image);
+        assembler.secondPass(compiledLines, symbols, fixups, image);
+
+        outputDirectory = Files.createTempDirectory("printer-benchmark");
+        printer = new Printer(outputDirectory.resolve("benchmark").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(outputDirectory))
+        {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void printList()
+    {
+        printer.printList(compiledLines, lines, image);
+    }
+
+    @Benchmark
+    public void printObjectCode()
+    {
+        printer.printObjectCode(image);
+    }
+
+    @Benchmark
+    public void printColoredList()
+    {
+        printer.printColoredList(compiledLines, lines, image);
+    }
+
+    @Benchmark
+    public void printOfficialObjectCode()
+    {
+        printer.printOfficialObjectCode(image);
+    }
+
+    @Benchmark
+    public void printColoredOfficialObjectCode()
+    {
+        printer.printColoredOfficialObjectCode(compiledLines, image);
+    }
+
+    @Benchmark
+    public void printAllFormats()
+    {
+        printer.print(EnumSet.allOf(OutputFormat.class), compiledLines, lines, image);
+    }
+}
@@ -0,0 +1,77 @@
+package eypdc.assembler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an endless loop of loads, stores, arithmetic, indexed accesses, bit tests and a subroutine call on the
+ * {@link Simulator}. Results are per executed instruction.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimulatorBenchmark
+{
+    private static final int STEPS = 10_000;
+
+    private static final String PROGRAM = String.join("\n",
+            "        ORG $8000",
+            "INICIO",
+            "        LDS #$01FF",
+            "        LDX #$0040",
+            "        LDY #$0080",
+            "CICLO",
+            "        LDAA #16",
+            "        LDAB 0,X",
+            "SUMA",
+            "        ADDB 1,X",
+            "        STAB 0,Y",
+            "        INC 2,X",
+            "        DECA",
+            "        BNE SUMA",
+            "        LDD $42",
+            "        ADDD #$0101",
+            "        STD $42",
+            "        BSET 5,X,#$01",
+            "        BRCLR 5,X,#$01 CICLO",
+            "        BCLR 5,X,#$01",
+            "        JSR SUB",
+            "        BRA CICLO",
+            "SUB",
+            "        PSHX",
+            "        LDAA $44",
+            "        ASLA",
+            "        STAA $44",
+            "        PULX",
+            "        RTS",
+            "        ORG $FFFE",
+            "        FCB $80,$00",
+            "        END");
+
+    private Simulator simulator;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        AssemblyResult result = new Assembler().assemble(PROGRAM);
+        if (!result.isSuccessful()) throw new IllegalStateException(result.getDiagnostics().toString());
+        simulator = new Simulator();
+        simulator.load(result.getImage());
+        simulator.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public long step()
+    {
+        for (int i = 0; i < STEPS; i++)
+        {
+            simulator.step();
+        }
+        return simulator.getCycles();
+    }
+}
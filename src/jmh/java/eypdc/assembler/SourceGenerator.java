@@ -0,0 +1,141 @@
+package eypdc.assembler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic *.asc sources for the benchmarks. Every addressing mode of every mnemonic in the instruction
+ * set is cycled through, with forward references to labels, EQU constants and FCB tables mixed in.
+ */
+public class SourceGenerator
+{
+    // Must be a compile-time constant so benchmarks can report results per source line.
+    public static final int LINES = 16384;
+
+    private static final int START_ADDRESS = 0x0100;
+    private static final int BLOCK_SIZE = 12;
+    private static final int FCB_PERIOD = 7;
+    private static final int CONSTANTS = 16;
+
+    private final List<String> templates = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+
+    private int nextTemplate = 0;
+    private int nextLabel = 0;
+    private int nextTable = 0;
+
+    private SourceGenerator(InstructionSet instructionSet)
+    {
+        for (int id = 0; id < instructionSet.getMnemonicCount(); id++)
+        {
+            String mnemonic = instructionSet.getMnemonic(id).toUpperCase();
+            for (AddressingMode addressingMode : AddressingMode.values())
+            {
+                if (!instructionSet.supports(id, addressingMode)) continue;
+                if (instructionSet.isSpecialMnemonic(id))
+                {
+                    String target = instructionSet.getSpecialOperands(id) == 3 ? " %s" : "";
+                    addSpecialTemplate(mnemonic, addressingMode, target);
+                }
+                else addStandardTemplates(mnemonic, addressingMode);
+            }
+        }
+    }
+
+    public static List<String> generate(InstructionSet instructionSet)
+    {
+        SourceGenerator generator = new SourceGenerator(instructionSet);
+        generator.generateLines();
+        return generator.lines;
+    }
+
+    private void addSpecialTemplate(String mnemonic, AddressingMode addressingMode, String target)
+    {
+        switch (addressingMode)
+        {
+            case DIR:
+                templates.add(mnemonic + " ZP3,#$80" + target);
+                break;
+            case IND_X:
+                templates.add(mnemonic + " $03,X,#$01" + target);
+                break;
+            case IND_Y:
+                templates.add(mnemonic + " $04,Y,#K2" + target);
+                break;
+        }
+    }
+
+    private void addStandardTemplates(String mnemonic, AddressingMode addressingMode)
+    {
+        switch (addressingMode)
+        {
+            case INH:
+                templates.add(mnemonic);
+                break;
+            case IMM:
+                templates.add(mnemonic + " #$2A");
+                templates.add(mnemonic + " #K5");
+                break;
+            case DIR:
+                templates.add(mnemonic + (mnemonic.equals("JSR") ? " $20" : " ZP1"));
+                break;
+            case IND_X:
+                templates.add(mnemonic + " $05,X");
+                break;
+            case IND_Y:
+                templates.add(mnemonic + " K7,Y");
+                break;
+            case EXT:
+                if (mnemonic.equals("JMP") || mnemonic.equals("JSR")) templates.add(mnemonic + " %s");
+                else templates.add(mnemonic + " IO9");
+                break;
+            case REL:
+                templates.add(mnemonic + " %s");
+                break;
+        }
+    }
+
+    private void generateLines()
+    {
+        lines.add("* Synthetic source generated for benchmarking");
+        for (int i = 0; i < CONSTANTS; i++)
+        {
+            lines.add(String.format("K%d EQU $%02X", i, i * 3));
+            lines.add(String.format("ZP%d EQU $%02X", i, 0x40 + i));
+            lines.add(String.format("IO%d EQU $%04X", i, 0x1000 + i));
+        }
+        lines.add(String.format("        ORG $%04X", START_ADDRESS));
+
+        // Every block ends with the label the previous one jumps to, so all branches stay within a relative jump.
+        lines.add(label(nextLabel));
+        int block = 0;
+        while (lines.size() < LINES - 2)
+        {
+            int remaining = LINES - 2 - lines.size();
+            if (block % FCB_PERIOD == FCB_PERIOD - 1 && remaining >= 3)
+            {
+                lines.add("TAB" + nextTable++);
+                lines.add("        FCB $01,$02,'A,%1010,200");
+                remaining -= 2;
+            }
+
+            int instructions = Math.min(BLOCK_SIZE, remaining - 1);
+            String target = label(nextLabel + 1);
+            for (int i = 0; i < instructions; i++)
+            {
+                if (i == 0) lines.add("* block " + block);
+                else lines.add("        " + String.format(templates.get(nextTemplate++ % templates.size()), target));
+            }
+            nextLabel++;
+            lines.add(label(nextLabel));
+            block++;
+        }
+        while (lines.size() < LINES - 1) lines.add("");
+        lines.add("        END");
+    }
+
+    private static String label(int index)
+    {
+        return "L" + index;
+    }
+}
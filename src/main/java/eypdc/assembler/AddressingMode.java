@@ -0,0 +1,40 @@
+package eypdc.assembler;
+
+public enum AddressingMode
+{
+    IMM("IMM"),
+    DIR("DIR"),
+    IND_X("IND,X"),
+    IND_Y("IND,Y"),
+    EXT("EXT"),
+    INH("INH"),
+    REL("REL");
+
+    private static final AddressingMode[] VALUES = values();
+
+    private final String key;
+
+    AddressingMode(String key)
+    {
+        this.key = key;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public static AddressingMode fromKey(String key)
+    {
+        for (AddressingMode addressingMode : VALUES)
+        {
+            if (addressingMode.key.equals(key)) return addressingMode;
+        }
+        throw new IllegalArgumentException("Unknown addressing mode " + key);
+    }
+
+    public static int count()
+    {
+        return VALUES.length;
+    }
+}
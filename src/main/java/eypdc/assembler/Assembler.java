@@ -6,35 +6,129 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class Assembler
 {
+    // What parseNumericLiteral returns for text that is not a literal
+    static final long NOT_A_NUMBER = -1;
+    // What parseOperandOrLabel returns for a label left to the second pass
+    private static final long LABEL_REFERENCE = Long.MIN_VALUE;
+
     private final InstructionSet instructionSet;
+    private final int jmpId;
+    private final int jsrId;
+    private final BranchRelaxer relaxer;
+    // Null unless optimizing
+    private final Peephole peephole;
+
+    public Assembler()
+    {
+        this(InstructionSet.getInstance());
+    }
+
+    /**
+     * The instruction set is immutable and an assembler keeps no state between calls, so both can be shared by any
+     * number of threads.
+     */
+    public Assembler(InstructionSet instructionSet)
+    {
+        this(instructionSet, false);
+    }
+
+    /**
+     * @param optimize run the {@link Peephole} pass, which rewrites some instructions into shorter or faster ones and
+     *                 notes each rewrite in the listings.
+     */
+    public Assembler(InstructionSet instructionSet, boolean optimize)
+    {
+        this.instructionSet = instructionSet;
+        this.jmpId = instructionSet.getMnemonicId("jmp");
+        this.jsrId = instructionSet.getMnemonicId("jsr");
+        this.relaxer = new BranchRelaxer(instructionSet, optimize);
+        this.peephole = optimize ? new Peephole(instructionSet) : null;
+    }
+
+    InstructionSet getInstructionSet()
+    {
+        return instructionSet;
+    }
 
-    private Assembler()
+    BranchRelaxer getRelaxer()
     {
-        this.instructionSet = InstructionSet.parseFromJson();
+        return relaxer;
     }
 
     public static void compile(String sourcePath)
     {
-        String filename = Paths.get(sourcePath).getFileName().toString();
+        compile(sourcePath, AssemblyOptions.DEFAULT);
+    }
+
+    /**
+     * Assembles a file into the working directory and prints its diagnostics to standard error.
+     */
+    public static AssemblyResult compile(String sourcePath, AssemblyOptions options)
+    {
+        Path source = Paths.get(sourcePath);
+        AssemblyResult result = new Assembler(InstructionSet.getInstance(), options.isOptimize())
+                .assemble(source, Paths.get(getRawFilename(source)), options);
+        for (Diagnostic diagnostic : result.getDiagnostics())
+        {
+            System.err.println(diagnostic.getMessage());
+        }
+        return result;
+    }
+
+    static String getRawFilename(Path sourcePath)
+    {
+        String filename = sourcePath.getFileName().toString();
         if (!filename.endsWith(".asc")) throw new RuntimeException("Unsupported file format (must be *.asc");
-        String rawFilename = filename.substring(0, filename.length() - 4);
+        return filename.substring(0, filename.length() - 4);
+    }
+
+    /**
+     * Assembles one source file into the requested formats, writing every output to {@code outputPrefix} plus the
+     * format suffix. A failed assembly only writes its diagnostics to the listing. Whether to optimize was decided when
+     * this assembler was built, so {@link AssemblyOptions#isOptimize()} is not read here.
+     */
+    AssemblyResult assemble(Path sourcePath, Path outputPrefix, AssemblyOptions options)
+    {
+        getRawFilename(sourcePath);
+        String sourceFile = sourcePath.toString();
+        AssemblyStats stats = options.isCollectStats() ? new AssemblyStats(true) : null;
+        SourceReadEvent readEvent = new SourceReadEvent();
+        readEvent.begin();
+        if (stats != null) stats.startPhase();
+        List<String> lines = readSource(sourcePath);
+        if (stats != null) stats.endPhase(AssemblyStats.Phase.READ);
+        readEvent.end();
+        if (readEvent.shouldCommit())
+        {
+            readEvent.sourceFile = sourceFile;
+            readEvent.lineCount = lines.size();
+            readEvent.commit();
+        }
 
-        Assembler assembler = new Assembler();
-        Printer printer = new Printer(rawFilename);
-        List<String> lines;
+        AssemblyResult result = assemble(lines, options.isCollectAllErrors(), stats, sourceFile);
 
-        // Read input file
+        if (stats != null) stats.startPhase();
+        new Printer(outputPrefix.toString(), options.getSRecordLength(), options.getSRecordHeader())
+                .print(options.getFormats(), result, stats);
+        if (stats != null) stats.endPhase(AssemblyStats.Phase.WRITE);
+        return result;
+    }
+
+    static List<String> readSource(Path sourcePath)
+    {
         try (BufferedReader inputStream = new BufferedReader(
-                new FileReader(sourcePath, Charset.forName("windows-1252"))))
+                new FileReader(sourcePath.toFile(), Charset.forName("windows-1252"))))
         {
-            lines = inputStream.lines().collect(Collectors.toList());
+            return inputStream.lines().collect(Collectors.toList());
         }
         catch (FileNotFoundException e)
         {
@@ -44,413 +138,621 @@ public class Assembler
         {
             throw new RuntimeException("An error occurred while reading the input file", e);
         }
+    }
+
+    /**
+     * Assembles a whole program in memory, without touching the file system. Compile errors are reported as
+     * diagnostics of the result; only the first one unless {@code collectAllErrors} is set.
+     */
+    public AssemblyResult assemble(CharSequence source, boolean collectAllErrors)
+    {
+        return assemble(source.toString().lines().collect(Collectors.toList()), collectAllErrors);
+    }
+
+    public AssemblyResult assemble(CharSequence source)
+    {
+        return assemble(source, false);
+    }
+
+    public AssemblyResult assemble(Reader source, boolean collectAllErrors) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(source);
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        return assemble(lines, collectAllErrors);
+    }
 
-        // Compile
-        List<CompiledLine> compiledLines = new ArrayList<>();
+    public AssemblyResult assemble(Reader source) throws IOException
+    {
+        return assemble(source, false);
+    }
+
+    AssemblyResult assemble(List<String> lines, boolean collectAllErrors)
+    {
+        return assemble(lines, collectAllErrors, null, null);
+    }
+
+    /**
+     * @param sourceFile names the program in flight recorder events; null when it was not read from a file.
+     */
+    AssemblyResult assemble(List<String> lines, boolean collectAllErrors, AssemblyStats stats, String sourceFile)
+    {
+        List<CompiledLine> compiledLines = new ArrayList<>(lines.size());
+        MemoryImage image = new MemoryImage();
+        FixupTable fixups = new FixupTable();
+        SymbolTable symbols = new SymbolTable();
+        List<CompileError> errors = collectAllErrors ? new ArrayList<>() : null;
+        FirstPassEvent firstPassEvent = new FirstPassEvent();
+        SecondPassEvent secondPassEvent = new SecondPassEvent();
         try
         {
-            Map<String, Integer> labels = assembler.firstPass(lines, compiledLines);
-            assembler.secondPass(compiledLines, labels);
+            firstPassEvent.begin();
+            if (stats != null) stats.startPhase();
+            firstPass(lines, compiledLines, fixups, image, symbols, errors);
+            if (stats != null) stats.endPhase(AssemblyStats.Phase.FIRST_PASS);
+            commit(firstPassEvent, sourceFile, lines.size(), fixups.size(), image);
+
+            secondPassEvent.begin();
+            if (stats != null) stats.startPhase();
+            secondPass(compiledLines, symbols, fixups, image, errors);
+            if (stats != null) stats.endPhase(AssemblyStats.Phase.SECOND_PASS);
+            commit(secondPassEvent, sourceFile, lines.size(), fixups.size(), image);
+            if (errors == null || errors.isEmpty())
+            {
+                AssemblyResult result = new AssemblyResult(lines, compiledLines, image, symbols, List.of(), stats);
+                if (stats != null) stats.count(result, fixups.size());
+                return result;
+            }
         }
         catch (CompileError compileError)
         {
-            compileError.printStackTrace();
-            printer.printErrorToList(compileError.getMessage());
-            return;
+            errors = List.of(compileError);
         }
 
-        printer.printList(compiledLines, lines);
-        printer.printObjectCode(compiledLines);
-        printer.printColoredList(compiledLines, lines);
-        printer.printOfficialObjectCode(compiledLines);
-        printer.printColoredOfficialObjectCode(compiledLines);
+        List<Diagnostic> diagnostics = new ArrayList<>(errors.size());
+        LineScanner scanner = new LineScanner();
+        for (CompileError error : errors)
+        {
+            diagnostics.add(Diagnostic.of(error, locateColumn(error, lines, scanner)));
+        }
+        // Second pass errors come after all first pass errors
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::getLine));
+        for (Diagnostic diagnostic : diagnostics)
+        {
+            CompileErrorEvent errorEvent = new CompileErrorEvent();
+            if (!errorEvent.shouldCommit()) break;
+            errorEvent.sourceFile = sourceFile;
+            errorEvent.line = diagnostic.getLine() + 1;
+            errorEvent.column = diagnostic.getColumn() + 1;
+            errorEvent.errorCode = diagnostic.getErrorCode();
+            errorEvent.message = diagnostic.getMessage();
+            errorEvent.commit();
+        }
+        AssemblyResult result = new AssemblyResult(lines, List.of(), new MemoryImage(), new SymbolTable(),
+                                                   diagnostics, stats);
+        if (stats != null) stats.count(result, 0);
+        return result;
     }
 
-    private void secondPass(List<CompiledLine> outputLines, Map<String, Integer> labels) throws CompileError
+    private static void commit(FirstPassEvent event, String sourceFile, int lineCount, int labelReferences,
+                               MemoryImage image)
     {
-        String jmpExtOpcodeString = instructionSet.getStandardOpcodes("jmp").get("EXT");
-        int jmpExtOpcode = opcodeStringToInt(jmpExtOpcodeString);
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.sourceFile = sourceFile;
+        event.lineCount = lineCount;
+        event.labelReferences = labelReferences;
+        event.imageSize = image.countOccupied();
+        event.commit();
+    }
 
-        String jsrExtOpcodeString = instructionSet.getStandardOpcodes("jsr").get("EXT");
-        int jsrExtOpcode = opcodeStringToInt(jsrExtOpcodeString);
+    private static void commit(SecondPassEvent event, String sourceFile, int lineCount, int labelReferences,
+                               MemoryImage image)
+    {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.sourceFile = sourceFile;
+        event.lineCount = lineCount;
+        event.labelReferences = labelReferences;
+        event.imageSize = image.countOccupied();
+        event.commit();
+    }
 
-        for (int i = 0; i < outputLines.size(); i++)
-        {
-            CompiledLine compiledLine = outputLines.get(i);
-            if (!compiledLine.isPending()) continue;
+    /**
+     * Points an error at the field it is about: the mnemonic for unknown mnemonics, the operand for errors about
+     * operands and the start of the statement otherwise.
+     */
+    private static int locateColumn(CompileError error, List<String> lines, LineScanner scanner)
+    {
+        int line = error.getErrorOffset();
+        if (line >= lines.size() || !scanner.scan(lines.get(line))) return 0;
+
+        int fieldCount = scanner.getFieldCount();
+        int mnemonicField = scanner.startsInLabelColumn() && fieldCount > 1 ? 1 : 0;
+        int operandField = Math.min(mnemonicField + 1, fieldCount - 1);
+        if (error instanceof NonexistentMnemonicError) return scanner.getFieldStart(mnemonicField);
+        if (error instanceof MissingOperandsError || error instanceof UnnecessaryOperandError ||
+            error instanceof UnsupportedOperandMagnitudeError || error instanceof UnsupportedAddressingModeError ||
+            error instanceof NonexistentConstantError || error instanceof NonexistentVariableError ||
+            error instanceof NonexistentLabelError || error instanceof BadFormatError ||
+            error instanceof NumericParsingError || error instanceof VeryLargeRelativeJumpError ||
+            error instanceof VeryLargeAbsoluteJumpError)
+            return scanner.getFieldStart(operandField);
+        return scanner.getFieldStart(0);
+    }
 
-            List<Integer> operands = compiledLine.getOperands();
-            Map<Integer, String> pendingIndexToLabel = compiledLine.getPendingIndexes();
+    void secondPass(List<CompiledLine> outputLines, SymbolTable symbols, FixupTable fixups, MemoryImage image)
+            throws CompileError
+    {
+        secondPass(outputLines, symbols, fixups, image, null);
+    }
 
-            for (String label : pendingIndexToLabel.values())
+    /**
+     * @param errors where to collect errors and carry on, or null to stop at the first one.
+     */
+    void secondPass(List<CompiledLine> outputLines, SymbolTable symbols, FixupTable fixups, MemoryImage image,
+                    List<CompileError> errors) throws CompileError
+    {
+        for (int fixup = 0; fixup < fixups.size(); fixup++)
+        {
+            int i = fixups.getLine(fixup);
+            try
             {
-                if (!labels.containsKey(label)) throw new NonexistentLabelError(i);
-                // IGNORES INDEX (REFACTOR IF NECESSARY)
-                int targetAddress = labels.get(label);
-
-                if (compiledLine.getOpcode().equals(jmpExtOpcode) || compiledLine.getOpcode().equals(jsrExtOpcode))
-                {
-                    if (targetAddress > 0xFFFF) throw new VeryLargeAbsoluteJumpError(i);
-                    operands.add(targetAddress);
-                }
-                else // Relative jump
-                {
-                    int nextAddress = compiledLine.getAddress() + compiledLine.getSizeInBytes();
-                    int jump = targetAddress - nextAddress;
-                    if (Math.abs(jump) > 0xFF) throw new VeryLargeRelativeJumpError(i);
-                    operands.add(jump);
-                }
+                CompiledLine compiledLine = outputLines.get(i);
+                // Dropped by an error after its fixups were recorded
+                if (compiledLine.isEmpty()) continue;
+
+                int symbol = fixups.getSymbol(fixup);
+                if (!symbols.isLabel(symbol)) throw new NonexistentLabelError(i);
+                compiledLine.setOperand(fixups.getSlot(fixup), resolveFixup(compiledLine, fixups.getKind(fixup),
+                                                                            symbols.getLabel(symbol), i));
+                compiledLine.writeTo(image);
+            }
+            catch (CompileError compileError)
+            {
+                if (errors == null) throw compileError;
+                errors.add(compileError);
             }
         }
     }
 
-    private Map<String, Integer> firstPass(List<String> inputLines, List<CompiledLine> outputLines) throws CompileError
+    /**
+     * @return the operand that makes {@code compiledLine} reference {@code targetAddress}. Relaxation can turn a
+     * branch into a jump or call to an absolute address, and a JMP into a BRA.
+     */
+    static int resolveFixup(CompiledLine compiledLine, FixupTable.Kind kind, int targetAddress, int lineNumber)
+            throws CompileError
+    {
+        boolean relative = kind == FixupTable.Kind.RELATIVE_8
+                           ? !compiledLine.isRelaxed()
+                           : compiledLine.getAddressingMode() == AddressingMode.REL;
+        if (!relative)
+        {
+            if (targetAddress > 0xFFFF) throw new VeryLargeAbsoluteJumpError(lineNumber);
+            return targetAddress;
+        }
+
+        // Relative jump
+        if (!BranchRelaxer.reaches(compiledLine.getAddress(), compiledLine.getSizeInBytes(), targetAddress))
+            throw new VeryLargeRelativeJumpError(lineNumber);
+        return targetAddress - (compiledLine.getAddress() + compiledLine.getSizeInBytes());
+    }
+
+    SymbolTable firstPass(List<String> inputLines, List<CompiledLine> outputLines, FixupTable fixups,
+                          MemoryImage image) throws CompileError
+    {
+        return firstPass(inputLines, outputLines, fixups, image, new SymbolTable(), null);
+    }
+
+    /**
+     * Lays the program out, optimizes it if asked to and then relaxes its branches, so the second pass only has to
+     * fill in label addresses.
+     *
+     * @param errors where to collect errors and carry on with the next line, or null to stop at the first one. A line
+     *               with an error assembles to nothing.
+     */
+    SymbolTable firstPass(List<String> inputLines, List<CompiledLine> outputLines, FixupTable fixups,
+                          MemoryImage image, SymbolTable symbols, List<CompileError> errors) throws CompileError
     {
-        Map<String, Integer> labels = new HashMap<>();
-        Map<String, Integer> constantsAndVariables = new HashMap<>();
         Integer targetAddress = null;
         boolean hasEndDirective = false;
+        BitSet segmentStarts = new BitSet();
+
+        LineScanner scanner = new LineScanner();
+        Statement statement = new Statement();
 
         for (int i = 0; i < inputLines.size(); i++)
         {
-            String line = inputLines.get(i).toUpperCase();
-            int commentIndex = line.indexOf('*');
-            if (commentIndex != -1) line = line.substring(0, commentIndex);
-
             // Blank line -> empty CompiledLine
-            if (line.isBlank())
+            if (!scanner.scan(inputLines.get(i)))
             {
                 outputLines.add(new CompiledLine());
                 continue;
             }
 
-            // Line is not empty but END directive was already parsed.
-            if (hasEndDirective) throw new EndConflictError(i);
-
-            CompiledLine compiledLine = new CompiledLine();
-            String[] splitLine = line.strip().split(" +");
-
-            // First character is not a blank space.
-            if (!line.split("")[0].matches("\\s"))
+            int fixupCount = fixups.size();
+            try
             {
-                // Check for EQU expression.
-                if (splitLine.length > 1 && splitLine[1].equalsIgnoreCase("EQU"))
-                {
-                    if (splitLine.length == 2) throw new MissingOperandsError(i);
-                    if (splitLine.length > 3) throw new UnnecessaryOperandError(i);
-                    constantsAndVariables.put(splitLine[0], parseNumericLiteral(splitLine[2], i));
-                    outputLines.add(compiledLine);
-                    continue;
-                }
+                // Line is not empty but END directive was already parsed.
+                if (hasEndDirective) throw new EndConflictError(i);
 
-                if (splitLine[0].equalsIgnoreCase("RESET"))
+                parseStatement(scanner, i, targetAddress != null, symbols, fixups, statement);
+                switch (statement.getKind())
                 {
-                    if (splitLine.length == 1)
-                    {
+                    case EQU:
+                        symbols.defineConstant(statement.getSymbol(), statement.getValue());
+                        break;
+                    case LABEL:
+                        if (symbols.isLabel(statement.getSymbol())) throw new ExistingLabelError(i);
+                        symbols.defineLabel(statement.getSymbol(), targetAddress, i);
+                        break;
+                    case ORG:
+                        targetAddress = statement.getValue();
+                        segmentStarts.set(i);
+                        break;
+                    case END:
+                        hasEndDirective = true;
+                        break;
+                    case CODE:
+                        CompiledLine compiledLine = statement.getCompiledLine();
+                        compiledLine.setAddress(targetAddress);
+                        checkWrite(image, compiledLine, i, outputLines);
+                        compiledLine.writeTo(image);
+                        targetAddress += compiledLine.getSizeInBytes();
                         outputLines.add(compiledLine);
                         continue;
-                    }
-                    else splitLine = Arrays.copyOfRange(splitLine, 1, splitLine.length);
-                }
-                else
-                {
-                    // If it is not a label, then it is an invalid instruction.
-                    if (splitLine.length != 1) throw new NonexistentMarginSpaceError(i);
-
-                    // Add label
-                    if (targetAddress == null) throw new NonexistentOrgDirective(i);
-                    String label = splitLine[0].replaceAll(":", "");
-                    if (labels.containsKey(label)) throw new ExistingLabelError(i);
-                    labels.put(label, targetAddress);
-                    outputLines.add(compiledLine);
-                    continue;
+                    default:
+                        break;
                 }
             }
-
-            // Line does have space at start, handle directives.
-            if (splitLine[0].equalsIgnoreCase("ORG"))
+            catch (CompileError compileError)
             {
-                if (splitLine.length > 2) throw new UnnecessaryOperandError(i);
-                if (splitLine.length == 1) throw new MissingOperandsError(i);
-                targetAddress = parseNumericLiteral(splitLine[1], i);
-                outputLines.add(compiledLine);
-                continue;
+                if (errors == null) throw compileError;
+                errors.add(compileError);
+                fixups.truncate(fixupCount);
             }
+            outputLines.add(new CompiledLine());
+        }
+
+        // Document does not contain END directive.
+        if (!hasEndDirective)
+        {
+            if (errors == null) throw new NonexistentEndDirectiveError(inputLines.size());
+            errors.add(new NonexistentEndDirectiveError(inputLines.size()));
+        }
+        int[] sizeChanges = peephole == null ? null : peephole.optimize(outputLines, symbols, segmentStarts);
+        relaxer.relax(outputLines, fixups, symbols, segmentStarts, sizeChanges, image, errors);
+        return symbols;
+    }
+
+    /**
+     * Fails if {@code compiledLine} would write past $FFFF or over bytes of an earlier line, which would otherwise
+     * silently win or lose depending on the output format. The occupancy bitmap makes the check a few bit tests per
+     * line; only a clash searches the earlier lines for the one to blame.
+     */
+    static void checkWrite(MemoryImage image, CompiledLine compiledLine, int i, List<CompiledLine> previousLines)
+            throws CompileError
+    {
+        if (compiledLine.getAddress() + compiledLine.getSizeInBytes() > MemoryImage.SIZE)
+            throw new AddressOverflowError(i);
+        int address = image.findOccupied(compiledLine.getAddress(), compiledLine.getSizeInBytes());
+        if (address == -1) return;
+        for (int line = previousLines.size() - 1; line >= 0; line--)
+        {
+            CompiledLine previous = previousLines.get(line);
+            if (previous.isEmpty()) continue;
+            int offset = (address - previous.getAddress()) & (MemoryImage.SIZE - 1);
+            if (offset < previous.getSizeInBytes()) throw new OverlappingWriteError(i, address, line);
+        }
+        throw new OverlappingWriteError(i, address, i);
+    }
 
+    /**
+     * Parses the non-blank line held by {@code scanner} into {@code statement}. Nothing here depends on the address
+     * of the line, only on whether an ORG directive came before it and on the constants defined so far; unresolved
+     * labels are added to {@code fixups}.
+     */
+    void parseStatement(LineScanner scanner, int i, boolean hasOrgDirective, SymbolTable symbols, FixupTable fixups,
+                        Statement statement) throws CompileError
+    {
+        int fieldCount = scanner.getFieldCount();
+        int first = 0;
 
-            if (splitLine[0].equalsIgnoreCase("END"))
+        // First character is not a blank space.
+        if (scanner.startsInLabelColumn())
+        {
+            // Check for EQU expression.
+            if (fieldCount > 1 && scanner.fieldEqualsIgnoreCase(1, "EQU"))
             {
-                // TODO: Handle operand
-                // if (splitLine.length != 1) throw new UnnecessaryOperandError(i);
-                hasEndDirective = true;
-                outputLines.add(compiledLine);
-                continue;
+                if (fieldCount == 2) throw new MissingOperandsError(i);
+                if (fieldCount > 3) throw new UnnecessaryOperandError(i);
+                int value = parseLiteral(scanner.getLine(), scanner.getFieldStart(2), scanner.getFieldEnd(2), i);
+                statement.set(Statement.Kind.EQU, symbols.intern(scanner.getLine(), scanner.getFieldStart(0),
+                                                                 scanner.getFieldEnd(0)), value, null);
+                return;
             }
 
-            // Target address has not been defined yet through the ORG directive, but we need it to generate the object code.
-            if (targetAddress == null) throw new NonexistentOrgDirective(i);
-
-            if (splitLine[0].equalsIgnoreCase("FCB"))
+            if (scanner.fieldEqualsIgnoreCase(0, "RESET"))
             {
-                if (splitLine.length > 2) throw new UnnecessaryOperandError(i);
-                if (splitLine.length == 1) throw new MissingOperandsError(i);
-                String[] operands = splitLine[1].split(",");
-                List<Integer> formedBytes = new ArrayList<>();
-                for (String operand : operands)
-                {
-                    int formedByte = parseNumericLiteral(operand, i);
-                    if (formedByte > 0xFF) throw new UnsupportedOperandMagnitudeError(i);
-                    formedBytes.add(formedByte);
-                }
-                compiledLine.setAddress(targetAddress);
-                compiledLine.setOpcode(formedBytes.get(0));
-                for (int j = 1; j < formedBytes.size(); j++)
+                if (fieldCount == 1)
                 {
-                    compiledLine.getOperands().add(formedBytes.get(j));
+                    statement.set(Statement.Kind.RESET, Statement.NO_SYMBOL, 0, null);
+                    return;
                 }
-                compiledLine.setSizeInBytes(formedBytes.size());
-                outputLines.add(compiledLine);
-                targetAddress += compiledLine.getSizeInBytes();
-                continue;
+                else first = 1;
             }
+            else
+            {
+                // If it is not a label, then it is an invalid instruction.
+                if (fieldCount != 1) throw new NonexistentMarginSpaceError(i);
 
-            // Line contains a mnemonic
-            compiledLine = compileLine(splitLine, i, constantsAndVariables);
-            compiledLine.setAddress(targetAddress);
-            targetAddress += compiledLine.getSizeInBytes();
-            outputLines.add(compiledLine);
+                if (!hasOrgDirective) throw new NonexistentOrgDirective(i);
+                statement.set(Statement.Kind.LABEL, scanner.internLabel(0, symbols), 0, null);
+                return;
+            }
         }
+        int fields = fieldCount - first;
 
-        // Document does not contain END directive.
-        if (!hasEndDirective) throw new NonexistentEndDirectiveError(inputLines.size());
-        return labels;
+        // Line does have space at start, handle directives.
+        if (scanner.fieldEqualsIgnoreCase(first, "ORG"))
+        {
+            if (fields > 2) throw new UnnecessaryOperandError(i);
+            if (fields == 1) throw new MissingOperandsError(i);
+            int value = parseLiteral(scanner.getLine(), scanner.getFieldStart(first + 1), scanner.getFieldEnd(first + 1),
+                                     i);
+            statement.set(Statement.Kind.ORG, Statement.NO_SYMBOL, value, null);
+            return;
+        }
+
+
+        if (scanner.fieldEqualsIgnoreCase(first, "END"))
+        {
+            // TODO: Handle operand
+            // if (fields != 1) throw new UnnecessaryOperandError(i);
+            statement.set(Statement.Kind.END, Statement.NO_SYMBOL, 0, null);
+            return;
+        }
+
+        // Target address has not been defined yet through the ORG directive, but we need it to generate the object code.
+        if (!hasOrgDirective) throw new NonexistentOrgDirective(i);
+
+        if (scanner.fieldEqualsIgnoreCase(first, "FCB"))
+        {
+            if (fields > 2) throw new UnnecessaryOperandError(i);
+            if (fields == 1) throw new MissingOperandsError(i);
+            int numOperands = scanner.splitOperands(first + 1, false);
+            int[] formedBytes = new int[numOperands];
+            for (int j = 0; j < numOperands; j++)
+            {
+                int formedByte = parseLiteral(scanner.getLine(), scanner.getOperandStart(j), scanner.getOperandEnd(j), i);
+                if (formedByte > 0xFF) throw new UnsupportedOperandMagnitudeError(i);
+                formedBytes[j] = formedByte;
+            }
+            CompiledLine compiledLine = new CompiledLine();
+            compiledLine.setOpcode(formedBytes[0]);
+            for (int j = 1; j < numOperands; j++)
+            {
+                compiledLine.addOperand(formedBytes[j]);
+            }
+            compiledLine.setSizeInBytes(numOperands);
+            statement.set(Statement.Kind.CODE, Statement.NO_SYMBOL, 0, compiledLine);
+            return;
+        }
+
+        // Line contains a mnemonic
+        statement.set(Statement.Kind.CODE, Statement.NO_SYMBOL, 0, compileLine(scanner, first, i, symbols, fixups));
     }
 
 
-    private CompiledLine compileLine(String[] target, int lineNumber, Map<String, Integer> constantsAndVariables)
+    private CompiledLine compileLine(LineScanner scanner, int mnemonicField, int lineNumber,
+                                     SymbolTable symbols, FixupTable fixups)
             throws CompileError
     {
-        String mnemonic = target[0].toLowerCase();
-        int numOperands = target.length - 1;
-        if (!instructionSet.containsMnemonic(mnemonic)) throw new NonexistentMnemonicError(lineNumber);
+        CharSequence line = scanner.getLine();
+        int mnemonicId = instructionSet.getMnemonicId(line, scanner.getFieldStart(mnemonicField),
+                                                      scanner.getFieldEnd(mnemonicField));
+        int numOperands = scanner.getFieldCount() - mnemonicField - 1;
+        if (mnemonicId == InstructionSet.NONEXISTENT) throw new NonexistentMnemonicError(lineNumber);
 
         CompiledLine compiledLine = new CompiledLine();
 
         // Exceptions
-        if (instructionSet.isSpecialMnemonic(mnemonic))
+        if (instructionSet.isSpecialMnemonic(mnemonicId))
         {
-            InstructionSet.SpecialInstructionInfo instructionInfo = instructionSet.getSpecialInstructionInfo(mnemonic);
-            Map<String, String> specialOpcodes = instructionInfo.getAddressingModes();
-            int numOfSpecialOperands = instructionInfo.getOperands();
+            int numOfSpecialOperands = instructionSet.getSpecialOperands(mnemonicId);
 
-            List<String> operands = new ArrayList<>();
-            for (int i = 1; i < target.length; i++)
-            {
-                operands.addAll(Arrays.asList(target[i].split(",#")));
-            }
-            numOperands = operands.size();
+            numOperands = scanner.splitOperands(mnemonicField + 1, true);
 
             if (numOperands < numOfSpecialOperands) throw new MissingOperandsError(lineNumber);
             else if (numOperands > numOfSpecialOperands) throw new UnnecessaryOperandError(lineNumber);
 
-            String firstOperand = operands.get(0);
-            int operandSize = firstOperand.length();
+            int firstStart = scanner.getOperandStart(0);
+            int firstEnd = scanner.getOperandEnd(0);
 
             // IND,X and IND,Y
-            if (operandSize >= 2 && firstOperand.charAt(operandSize - 2) == ',')
+            if (firstEnd - firstStart >= 2 && line.charAt(firstEnd - 2) == ',')
             {
-                if (firstOperand.charAt(operandSize - 1) != 'X' && firstOperand.charAt(operandSize - 1) != 'Y')
-                    throw new BadFormatError(lineNumber);
+                char register = Character.toUpperCase(line.charAt(firstEnd - 1));
+                if (register != 'X' && register != 'Y') throw new BadFormatError(lineNumber);
 
-                compiledLine = compileIndInstruction(constantsAndVariables, specialOpcodes, firstOperand, lineNumber,
+                compiledLine = compileIndInstruction(symbols, mnemonicId, line, firstStart, firstEnd, lineNumber,
                                                      numOfSpecialOperands);
             }
             // DIR
             else
             {
-                int parsedOperand = parseVariable(constantsAndVariables, firstOperand, lineNumber, 0xFF);
+                int parsedOperand = parseVariable(symbols, line, firstStart, firstEnd, lineNumber, 0xFF);
 
-                String opcode = specialOpcodes.get("DIR");
-                compiledLine.setOpcode(opcodeStringToInt(opcode));
-                compiledLine.getOperands().add(parsedOperand);
-                compiledLine.setSizeInBytes(getOpcodeSize(opcode) + numOfSpecialOperands);
+                setOpcode(compiledLine, mnemonicId, AddressingMode.DIR, numOfSpecialOperands);
+                compiledLine.addOperand(parsedOperand);
             }
 
-            String secondOperand = operands.get(1);
-            int parsedSecondOperand = parseVariable(constantsAndVariables, secondOperand, lineNumber, 0xFF);
-            compiledLine.getOperands().add(parsedSecondOperand);
+            int parsedSecondOperand = parseVariable(symbols, line, scanner.getOperandStart(1),
+                                                    scanner.getOperandEnd(1), lineNumber, 0xFF);
+            compiledLine.addOperand(parsedSecondOperand);
 
             if (numOfSpecialOperands == 3)
             {
-                String thirdOperand = operands.get(2);
-                Integer parsedThirdOperand =
-                        parseNthOperandOrLabel(constantsAndVariables, compiledLine, thirdOperand, lineNumber, 2, 0xFF);
-                if (parsedThirdOperand == null) return compiledLine;
-                compiledLine.getOperands().add(parsedSecondOperand);
+                long parsedThirdOperand = parseOperandOrLabel(symbols, fixups, compiledLine, line,
+                                                              scanner.getOperandStart(2), scanner.getOperandEnd(2),
+                                                              lineNumber, FixupTable.Kind.RELATIVE_8, 0xFF);
+                if (parsedThirdOperand == LABEL_REFERENCE) return compiledLine;
+                compiledLine.addOperand((int) parsedThirdOperand);
             }
 
             return compiledLine;
         }
 
         if (numOperands > 1) throw new UnnecessaryOperandError(lineNumber);
-        Map<String, String> standardOpcodes = instructionSet.getStandardOpcodes(mnemonic);
 
         // INH
         if (numOperands == 0)
         {
-            if (!standardOpcodes.containsKey("INH")) throw new MissingOperandsError(lineNumber);
-            String opcode = standardOpcodes.get("INH");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode));
+            if (!instructionSet.supports(mnemonicId, AddressingMode.INH)) throw new MissingOperandsError(lineNumber);
+            setOpcode(compiledLine, mnemonicId, AddressingMode.INH, 0);
             return compiledLine;
         }
 
         // 1 operand at this point
-        String operand = target[1];
+        int operandStart = scanner.getFieldStart(mnemonicField + 1);
+        int operandEnd = scanner.getFieldEnd(mnemonicField + 1);
 
         // REL (Does not share mnemonics)
-        if (standardOpcodes.containsKey("REL"))
+        if (instructionSet.supports(mnemonicId, AddressingMode.REL))
         {
-            String opcode = standardOpcodes.get("REL");
             compiledLine.setSizeInBytes(2);
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
+            compiledLine.setOpcode(instructionSet.getOpcode(mnemonicId, AddressingMode.REL));
+            compiledLine.setAddressingMode(AddressingMode.REL);
+            compiledLine.setCycles(instructionSet.getCycles(mnemonicId, AddressingMode.REL));
 
-            Integer parsedOperand =
-                    parseOnlyOperandOrLabel(constantsAndVariables, compiledLine, operand, lineNumber, 0xFF);
-            if (parsedOperand == null) return compiledLine;
+            long parsedOperand = parseOperandOrLabel(symbols, fixups, compiledLine, line, operandStart, operandEnd,
+                                                     lineNumber, FixupTable.Kind.RELATIVE_8, 0xFF);
+            if (parsedOperand == LABEL_REFERENCE) return compiledLine;
 
-            compiledLine.getOperands().add(parsedOperand);
+            compiledLine.addOperand((int) parsedOperand);
             return compiledLine;
         }
 
         // IMM
-        if (operand.charAt(0) == '#')
+        if (line.charAt(operandStart) == '#')
         {
-            if (!standardOpcodes.containsKey("IMM")) throw new UnsupportedAddressingModeError(lineNumber);
-            operand = operand.substring(1);
+            if (!instructionSet.supports(mnemonicId, AddressingMode.IMM))
+                throw new UnsupportedAddressingModeError(lineNumber);
 
-            int parsedOperand = parseConstant(constantsAndVariables, operand, lineNumber);
+            int immediateSize = instructionSet.getImmediateSize(mnemonicId);
+            int parsedOperand = parseConstant(symbols, line, operandStart + 1, operandEnd, lineNumber,
+                                              immediateSize == 1 ? 0xFF : 0xFFFF);
 
-            String opcode = standardOpcodes.get("IMM");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.getOperands().add(parsedOperand);
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode) + getOperandSize(parsedOperand));
+            setOpcode(compiledLine, mnemonicId, AddressingMode.IMM, immediateSize);
+            compiledLine.addOperand(parsedOperand);
             return compiledLine;
         }
 
-        int operandSize = operand.length();
         // IND,X and IND,Y
-        if (operandSize >= 2 && operand.charAt(operandSize - 2) == ',')
+        if (operandEnd - operandStart >= 2 && line.charAt(operandEnd - 2) == ',')
         {
-            if (operand.charAt(operandSize - 1) != 'X' && operand.charAt(operandSize - 1) != 'Y')
-                throw new BadFormatError(lineNumber);
-            return compileIndInstruction(constantsAndVariables, standardOpcodes, operand, lineNumber, 1);
+            char register = Character.toUpperCase(line.charAt(operandEnd - 1));
+            if (register != 'X' && register != 'Y') throw new BadFormatError(lineNumber);
+            return compileIndInstruction(symbols, mnemonicId, line, operandStart, operandEnd, lineNumber, 1);
         }
 
         // DIR and EXT
 
         // JMP (EXT)
-        if (mnemonic.equalsIgnoreCase("JMP"))
+        if (mnemonicId == jmpId)
         {
-            String opcode = standardOpcodes.get("EXT");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 2);
+            setOpcode(compiledLine, mnemonicId, AddressingMode.EXT, 2);
 
-            Integer parsedOperand =
-                    parseOnlyOperandOrLabel(constantsAndVariables, compiledLine, operand, lineNumber, 0xFFFF);
-            if (parsedOperand == null) return compiledLine;
+            long parsedOperand = parseOperandOrLabel(symbols, fixups, compiledLine, line, operandStart, operandEnd,
+                                                     lineNumber, FixupTable.Kind.ABSOLUTE_16, 0xFFFF);
+            if (parsedOperand == LABEL_REFERENCE) return compiledLine;
 
-            compiledLine.getOperands().add(parsedOperand);
+            compiledLine.addOperand((int) parsedOperand);
             return compiledLine;
         }
 
         // JSR (DIR or EXT)
-        if (mnemonic.equalsIgnoreCase("JSR"))
+        if (mnemonicId == jsrId)
         {
-            Integer parsedOperand =
-                    parseOnlyOperandOrLabel(constantsAndVariables, compiledLine, operand, lineNumber, 0xFFFF);
+            long parsedOperand = parseOperandOrLabel(symbols, fixups, compiledLine, line, operandStart, operandEnd,
+                                                     lineNumber, FixupTable.Kind.ABSOLUTE_16, 0xFFFF);
             // EXT, label
-            if (parsedOperand == null)
+            if (parsedOperand == LABEL_REFERENCE)
             {
-                String opcode = standardOpcodes.get("EXT");
-                compiledLine.setOpcode(opcodeStringToInt(opcode));
-                compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 2);
+                setOpcode(compiledLine, mnemonicId, AddressingMode.EXT, 2);
                 return compiledLine;
             }
             // EXT, parsed value
             else if (parsedOperand > 0xFF)
             {
-                String opcode = standardOpcodes.get("EXT");
-                compiledLine.setOpcode(opcodeStringToInt(opcode));
-                compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 2);
-                compiledLine.getOperands().add(parsedOperand);
+                setOpcode(compiledLine, mnemonicId, AddressingMode.EXT, 2);
+                compiledLine.addOperand((int) parsedOperand);
                 return compiledLine;
             }
 
             // DIR, operand <= OxFF
-            String opcode = standardOpcodes.get("DIR");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 1);
-            compiledLine.getOperands().add(parsedOperand);
+            setOpcode(compiledLine, mnemonicId, AddressingMode.DIR, 1);
+            compiledLine.addOperand((int) parsedOperand);
             return compiledLine;
         }
 
-        int parsedOperand = parseVariable(constantsAndVariables, operand, lineNumber, 0xFFFF);
+        int parsedOperand = parseVariable(symbols, line, operandStart, operandEnd, lineNumber, 0xFFFF);
 
         // DIR
-        if (parsedOperand <= 0xFF && standardOpcodes.containsKey("DIR"))
+        if (parsedOperand <= 0xFF && instructionSet.supports(mnemonicId, AddressingMode.DIR))
         {
-            String opcode = standardOpcodes.get("DIR");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 1);
+            setOpcode(compiledLine, mnemonicId, AddressingMode.DIR, 1);
         }
         // EXT
         else // (parsedOperand <= 0xFFFF)
         {
-            if (!standardOpcodes.containsKey("EXT")) throw new UnsupportedAddressingModeError(lineNumber);
-            String opcode = standardOpcodes.get("EXT");
-            compiledLine.setOpcode(opcodeStringToInt(opcode));
-            compiledLine.setSizeInBytes(getOpcodeSize(opcode) + 2);
+            if (!instructionSet.supports(mnemonicId, AddressingMode.EXT))
+                throw new UnsupportedAddressingModeError(lineNumber);
+            setOpcode(compiledLine, mnemonicId, AddressingMode.EXT, 2);
         }
 
-        compiledLine.getOperands().add(parsedOperand);
+        compiledLine.addOperand(parsedOperand);
         return compiledLine;
     }
 
-    private CompiledLine compileIndInstruction(Map<String, Integer> constantsAndVariables, Map<String, String> opcodes,
-                                               String operand, int lineNumber, int operandsSizeInBytes)
+    private CompiledLine compileIndInstruction(SymbolTable symbols, int mnemonicId, CharSequence line, int start,
+                                               int end, int lineNumber, int operandsSizeInBytes)
             throws UnsupportedOperandMagnitudeError, NonexistentVariableError, UnsupportedAddressingModeError
     {
         CompiledLine compiledLine = new CompiledLine();
-        int operandSize = operand.length();
 
-        String strippedOperand = operand.substring(0, operandSize - 2);
-        int parsedOperand = parseVariable(constantsAndVariables, strippedOperand, lineNumber, 0xFF);
+        // Without the ",X" or ",Y"
+        int parsedOperand = parseVariable(symbols, line, start, end - 2, lineNumber, 0xFF);
 
-        String opcode;
-        if (operand.charAt(operandSize - 1) == 'X')
-        {
-            if (!opcodes.containsKey("IND,X")) throw new UnsupportedAddressingModeError(lineNumber);
-            opcode = opcodes.get("IND,X");
-        }
-        else
-        {
-            if (!opcodes.containsKey("IND,Y")) throw new UnsupportedAddressingModeError(lineNumber);
-            opcode = opcodes.get("IND,Y");
-        }
+        AddressingMode addressingMode = Character.toUpperCase(line.charAt(end - 1)) == 'X'
+                                        ? AddressingMode.IND_X : AddressingMode.IND_Y;
+        if (!instructionSet.supports(mnemonicId, addressingMode)) throw new UnsupportedAddressingModeError(lineNumber);
 
-        compiledLine.setOpcode(opcodeStringToInt(opcode));
-        compiledLine.getOperands().add(parsedOperand);
-        compiledLine.setSizeInBytes(getOpcodeSize(opcode) + operandsSizeInBytes);
+        setOpcode(compiledLine, mnemonicId, addressingMode, operandsSizeInBytes);
+        compiledLine.addOperand(parsedOperand);
         return compiledLine;
     }
 
-    private int parseConstant(Map<String, Integer> constantsAndVariables, String operand, int lineNumber)
+    private void setOpcode(CompiledLine compiledLine, int mnemonicId, AddressingMode addressingMode,
+                           int operandsSizeInBytes)
+    {
+        compiledLine.setOpcode(instructionSet.getOpcode(mnemonicId, addressingMode));
+        compiledLine.setAddressingMode(addressingMode);
+        compiledLine.setCycles(instructionSet.getCycles(mnemonicId, addressingMode));
+        compiledLine.setSizeInBytes(instructionSet.getOpcodeSize(mnemonicId, addressingMode) + operandsSizeInBytes);
+    }
+
+    private int parseConstant(SymbolTable symbols, CharSequence line, int start, int end, int lineNumber,
+                              int maxValue)
             throws NonexistentConstantError, UnsupportedOperandMagnitudeError
     {
         try
         {
-            return parseOperand(constantsAndVariables, operand, lineNumber, 65535);
+            return parseOperand(symbols, line, start, end, lineNumber, maxValue);
         }
         catch (NonexistentConstantOrVariableError error)
         {
@@ -458,12 +760,13 @@ public class Assembler
         }
     }
 
-    private int parseVariable(Map<String, Integer> constantsAndVariables, String operand, int lineNumber, int maxValue)
+    private int parseVariable(SymbolTable symbols, CharSequence line, int start, int end, int lineNumber,
+                              int maxValue)
             throws NonexistentVariableError, UnsupportedOperandMagnitudeError
     {
         try
         {
-            return parseOperand(constantsAndVariables, operand, lineNumber, maxValue);
+            return parseOperand(symbols, line, start, end, lineNumber, maxValue);
         }
         catch (NonexistentConstantOrVariableError error)
         {
@@ -471,80 +774,94 @@ public class Assembler
         }
     }
 
-    private int parseOperand(Map<String, Integer> constantsAndVariables, String operand, int lineNumber, int maxValue)
+    /**
+     * Parses the literal or constant in {@code line[start, end)}.
+     */
+    private int parseOperand(SymbolTable symbols, CharSequence line, int start, int end, int lineNumber,
+                             int maxValue)
             throws UnsupportedOperandMagnitudeError, NonexistentConstantOrVariableError
     {
         int parsedOperand;
-        try
-        {
-            parsedOperand = parseNumericLiteral(operand, lineNumber);
-        }
-        catch (NumberFormatException | NumericParsingError numberFormatException)
+        long literal = parseNumericLiteral(line, start, end);
+        if (literal != NOT_A_NUMBER) parsedOperand = (int) literal;
+        else
         {
-            if (!constantsAndVariables.containsKey(operand)) throw new NonexistentConstantOrVariableError(lineNumber);
-            parsedOperand = constantsAndVariables.get(operand);
+            int symbol = symbols.intern(line, start, end);
+            if (!symbols.isConstant(symbol)) throw new NonexistentConstantOrVariableError(lineNumber);
+            parsedOperand = symbols.getConstant(symbol);
         }
 
         if (parsedOperand > maxValue) throw new UnsupportedOperandMagnitudeError(lineNumber);
         return parsedOperand;
     }
 
-    private Integer parseOnlyOperandOrLabel(Map<String, Integer> constantsAndVariables, CompiledLine compiledLine,
-                                            String operand, int lineNumber, int maxValue)
+    /**
+     * Parses an operand that may also be a label. Labels are left as a zero placeholder in the operand slot and
+     * recorded as a fixup for the second pass, in which case {@link #LABEL_REFERENCE} is returned.
+     */
+    private long parseOperandOrLabel(SymbolTable symbols, FixupTable fixups, CompiledLine compiledLine,
+                                     CharSequence line, int start, int end, int lineNumber, FixupTable.Kind kind,
+                                     int maxValue)
             throws UnsupportedOperandMagnitudeError
     {
-        return parseNthOperandOrLabel(constantsAndVariables, compiledLine, operand, lineNumber, 0, maxValue);
-    }
-
-    private Integer parseNthOperandOrLabel(Map<String, Integer> constantsAndVariables, CompiledLine compiledLine,
-                                           String operand, int lineNumber, int operandIndex, int maxValue)
-            throws UnsupportedOperandMagnitudeError
-    {
-        Integer parsedOperand = null;
-        try
-        {
-            parsedOperand = parseNumericLiteral(operand, lineNumber);
-        }
-        catch (NumberFormatException | NumericParsingError numberFormatException)
+        int parsedOperand;
+        long literal = parseNumericLiteral(line, start, end);
+        if (literal != NOT_A_NUMBER) parsedOperand = (int) literal;
+        else
         {
-            if (constantsAndVariables.containsKey(operand))
-                parsedOperand = constantsAndVariables.get(operand);
-            else
+            int symbol = symbols.intern(line, start, end);
+            if (!symbols.isConstant(symbol))
             {
-                compiledLine.getPendingIndexes().put(operandIndex, operand);
+                fixups.add(lineNumber, compiledLine.getOperandCount(), kind, symbol);
+                compiledLine.addOperand(0);
+                return LABEL_REFERENCE;
             }
+            parsedOperand = symbols.getConstant(symbol);
         }
-        if (parsedOperand != null && parsedOperand > maxValue) throw new UnsupportedOperandMagnitudeError(lineNumber);
+        if (parsedOperand > maxValue) throw new UnsupportedOperandMagnitudeError(lineNumber);
         return parsedOperand;
     }
 
-    private int parseNumericLiteral(String operand, int lineNumber) throws NumericParsingError, NumberFormatException
+    /**
+     * Parses a literal for a directive, where a symbol is not allowed.
+     */
+    private static int parseLiteral(CharSequence line, int start, int end, int lineNumber) throws NumericParsingError
     {
-        if (operand.isBlank()) throw new NumericParsingError(lineNumber);
-
-        int result;
-        char firstChar = operand.charAt(0);
-        if (firstChar == '$') result = Integer.parseUnsignedInt(operand.substring(1), 16);
-        else if (firstChar == '%') result = Integer.parseUnsignedInt(operand.substring(1), 2);
-        else if (firstChar == '\'') result = operand.charAt(1);
-        else result = Integer.parseUnsignedInt(operand, 10);
-
-        return result;
+        long literal = parseNumericLiteral(line, start, end);
+        if (literal == NOT_A_NUMBER) throw new NumericParsingError(lineNumber);
+        return (int) literal;
     }
 
-    private int getOperandSize(int operand)
+    /**
+     * Reads a $hexadecimal, %binary, 'c' character or decimal literal straight from {@code text[start, end)}. Numbers
+     * follow {@link Integer#parseUnsignedInt(String, int)}: an optional '+' and up to 32 bits. Like every operand,
+     * character literals are upper case.
+     *
+     * @return the unsigned value, or {@link #NOT_A_NUMBER} if the text is not a literal, which usually means it is a
+     * symbol.
+     */
+    static long parseNumericLiteral(CharSequence text, int start, int end)
     {
-        if (operand <= 0xFF) return 1;
-        else return 2;
-    }
+        if (start == end) return NOT_A_NUMBER;
 
-    private int getOpcodeSize(String opcode)
-    {
-        return opcode.replaceAll("\\s", "").length() / 2;
-    }
+        int radix = 10;
+        char firstChar = text.charAt(start);
+        if (firstChar == '\'') return end - start < 2 ? NOT_A_NUMBER : Character.toUpperCase(text.charAt(start + 1));
+        if (firstChar == '$') radix = 16;
+        else if (firstChar == '%') radix = 2;
+        if (radix != 10) start++;
 
-    private int opcodeStringToInt(String opcode)
-    {
-        return Integer.parseUnsignedInt(opcode.replaceAll("\\s", ""), 16);
+        if (start < end && text.charAt(start) == '+') start++;
+        if (start == end) return NOT_A_NUMBER;
+
+        long value = 0;
+        for (int i = start; i < end; i++)
+        {
+            int digit = Character.digit(text.charAt(i), radix);
+            if (digit < 0) return NOT_A_NUMBER;
+            value = value * radix + digit;
+            if (value > 0xFFFFFFFFL) return NOT_A_NUMBER;
+        }
+        return value;
     }
 }
@@ -0,0 +1,328 @@
+package eypdc.assembler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived assembler listening on a localhost TCP port, so editors and build scripts pay for JVM startup and JIT
+ * warm-up once instead of on every file. The protocol is line based UTF-8 text and a connection may carry any number
+ * of requests:
+ *
+ * <pre>
+ * ASSEMBLE &lt;formats&gt; &lt;path.asc&gt;
+ * SOURCE &lt;formats&gt; &lt;line count&gt; &lt;path.asc&gt;   followed by that many source lines
+ * CLOSE &lt;path.asc&gt;
+ * SHUTDOWN &lt;token&gt;
+ * </pre>
+ * <p>
+ * {@code formats} is a comma separated list of format keys or {@code all}. Outputs are written next to the given path,
+ * which for SOURCE only names the outputs. Each response is a status line ({@code ASSEMBLED}, {@code COMPILE_ERROR}
+ * or {@code FAILED <message>}), one {@code ERROR <line> <column> <message>} line per diagnostic of a program that did
+ * not assemble, one {@code OUTPUT <path>} line per file written and a final {@code END}. CLOSE drops the incremental
+ * state kept for a path and answers {@code CLOSED}; the least recently used state is also dropped once more paths
+ * than the session limit have been assembled.
+ * <p>
+ * The port only listens on the loopback address, but any local process can connect, and the server reads and writes
+ * files as the user running it. So it only serves paths in its root directory or below, relative paths being taken
+ * from the root. It never reads or writes through a symbolic link, and outputs only go to the directory of the source
+ * they were assembled from. SHUTDOWN is refused unless the server was given a token and the request carries it.
+ * <p>
+ * Every request is assembled and written with the options the server was started with, S-record length and header
+ * included, except that the request names its formats and every diagnostic is reported. With {@link AssemblyOptions#isOptimize()} set, programs are assembled in full on
+ * every request, as the peephole pass looks across lines and cannot run incrementally.
+ */
+public class AssemblerServer
+{
+    public static final int DEFAULT_PORT = 6811;
+    public static final int DEFAULT_MAX_SESSIONS = 64;
+
+    private final AssemblyOptions options;
+    private final Assembler assembler;
+    // In access order, so the eldest entry is the least recently used; guarded by itself
+    private final Map<Path, IncrementalAssembler> sessions;
+    private final Path root;
+    // Null when SHUTDOWN is refused
+    private final byte[] shutdownToken;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable ->
+    {
+        Thread thread = new Thread(runnable, "assembler-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Serves the working directory and refuses SHUTDOWN.
+     */
+    public AssemblerServer(int port) throws IOException
+    {
+        this(port, DEFAULT_MAX_SESSIONS, Paths.get(""), null, AssemblyOptions.DEFAULT);
+    }
+
+    /**
+     * @param maxSessions   how many paths keep their incremental state, each holding a 64 KB image and every parsed
+     *                      line of its program.
+     * @param root          the directory whose sources, and the directories below it, the server assembles.
+     * @param shutdownToken what a SHUTDOWN request must carry, or null to refuse every one.
+     * @param options       how every request is assembled; its formats and collectStats are not read.
+     */
+    public AssemblerServer(int port, int maxSessions, Path root, String shutdownToken, AssemblyOptions options)
+            throws IOException
+    {
+        if (maxSessions < 1) throw new IllegalArgumentException("At least one session is needed");
+        this.options = options;
+        this.assembler = new Assembler(InstructionSet.getInstance(), options.isOptimize());
+        this.root = root.toRealPath();
+        this.shutdownToken = shutdownToken == null ? null : shutdownToken.getBytes(StandardCharsets.UTF_8);
+        sessions = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, IncrementalAssembler> eldest)
+            {
+                return size() > maxSessions;
+            }
+        };
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until a SHUTDOWN request carrying the token arrives.
+     */
+    public void run() throws IOException
+    {
+        try
+        {
+            while (!serverSocket.isClosed())
+            {
+                Socket socket;
+                try
+                {
+                    socket = serverSocket.accept();
+                }
+                catch (IOException e)
+                {
+                    if (serverSocket.isClosed()) break;
+                    throw e;
+                }
+                executor.execute(() -> serve(socket));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            String request;
+            while ((request = reader.readLine()) != null)
+            {
+                if (request.isBlank()) continue;
+                String[] fields = request.strip().split(" ", 2);
+                if (fields[0].equals("SHUTDOWN"))
+                {
+                    if (!isShutdownToken(fields.length > 1 ? fields[1] : ""))
+                    {
+                        respond(writer, "FAILED SHUTDOWN is not allowed without the server's token\n");
+                        continue;
+                    }
+                    respond(writer, "BYE\n");
+                    serverSocket.close();
+                    return;
+                }
+                respond(writer, handle(request, reader));
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away; nothing left to answer
+        }
+    }
+
+    private String handle(String request, BufferedReader reader) throws IOException
+    {
+        String[] fields = request.strip().split(" ", 2);
+        String command = fields[0];
+        String arguments = fields.length > 1 ? fields[1] : "";
+        try
+        {
+            switch (command)
+            {
+                case "ASSEMBLE":
+                {
+                    String[] split = splitArguments(arguments, 2);
+                    Set<OutputFormat> formats = parseFormats(split[0]);
+                    Path source = resolveSource(split[1]);
+                    List<String> lines = Assembler.readSource(source);
+                    return assemble(lines, source, formats);
+                }
+                case "SOURCE":
+                {
+                    String[] split = splitArguments(arguments, 3);
+                    Set<OutputFormat> formats = parseFormats(split[0]);
+                    int lineCount = Integer.parseInt(split[1]);
+                    List<String> lines = new ArrayList<>(lineCount);
+                    for (int i = 0; i < lineCount; i++)
+                    {
+                        String line = reader.readLine();
+                        if (line == null) throw new IOException("Connection closed inside a SOURCE request");
+                        lines.add(line);
+                    }
+                    return assemble(lines, resolveSource(split[2]), formats);
+                }
+                case "CLOSE":
+                {
+                    Path source = resolveSource(arguments.strip());
+                    closeSession(source.resolveSibling(Assembler.getRawFilename(source)));
+                    return "CLOSED\n";
+                }
+                default:
+                    return "FAILED Unknown command " + command + "\n";
+            }
+        }
+        catch (RuntimeException e)
+        {
+            return "FAILED " + e.getMessage() + "\n";
+        }
+    }
+
+    /**
+     * Requests for the same outputs share an incremental assembler, so saving a large file after a small edit only
+     * parses the lines that changed.
+     */
+    private IncrementalAssembler getSession(Path outputPrefix)
+    {
+        synchronized (sessions)
+        {
+            return sessions.computeIfAbsent(outputPrefix, key -> new IncrementalAssembler(assembler));
+        }
+    }
+
+    private void closeSession(Path outputPrefix)
+    {
+        synchronized (sessions)
+        {
+            sessions.remove(outputPrefix);
+        }
+    }
+
+    /**
+     * @return the absolute path of a source named by a request, once it is known to be in the root directory or below
+     * it and not to be a symbolic link.
+     */
+    private Path resolveSource(String path)
+    {
+        Path source = root.resolve(path).normalize();
+        Path directory;
+        try
+        {
+            directory = source.getParent().toRealPath();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("The directory of " + path + " does not exist");
+        }
+        if (!directory.startsWith(root)) throw new IllegalArgumentException(path + " is outside of " + root);
+        source = directory.resolve(source.getFileName());
+        Assembler.getRawFilename(source);
+        if (Files.isSymbolicLink(source)) throw new IllegalArgumentException(path + " is a symbolic link");
+        return source;
+    }
+
+    private String assemble(List<String> lines, Path source, Set<OutputFormat> formats)
+    {
+        Path outputPrefix = source.resolveSibling(Assembler.getRawFilename(source));
+        for (OutputFormat format : OutputFormat.values())
+        {
+            Path output = Paths.get(outputPrefix + format.getSuffix());
+            if (Files.isSymbolicLink(output))
+                throw new IllegalArgumentException(output + " is a symbolic link");
+        }
+
+        AssemblyOptions requestOptions = options.toBuilder().formats(formats).collectAllErrors(true).build();
+        List<Diagnostic> diagnostics;
+        if (options.isOptimize())
+        {
+            AssemblyResult result = assembler.assemble(lines, true);
+            new Printer(outputPrefix.toString(), options.getSRecordLength(), options.getSRecordHeader())
+                    .print(formats, result);
+            diagnostics = result.getDiagnostics();
+        }
+        else diagnostics = getSession(outputPrefix).assemble(lines, outputPrefix, requestOptions);
+        StringBuilder response = new StringBuilder();
+        if (diagnostics.isEmpty()) response.append("ASSEMBLED\n");
+        else
+        {
+            response.append("COMPILE_ERROR\n");
+            for (Diagnostic diagnostic : diagnostics)
+            {
+                response.append("ERROR ").append(diagnostic.getLine() + 1).append(' ')
+                        .append(diagnostic.getColumn() + 1).append(' ').append(diagnostic.getMessage()).append('\n');
+            }
+            formats = EnumSet.of(OutputFormat.LIST);
+        }
+        for (OutputFormat format : formats)
+        {
+            response.append("OUTPUT ").append(outputPrefix).append(format.getSuffix()).append('\n');
+        }
+        return response.toString();
+    }
+
+    private boolean isShutdownToken(String token)
+    {
+        return shutdownToken != null && MessageDigest.isEqual(shutdownToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] splitArguments(String arguments, int count)
+    {
+        // The path comes last and may contain spaces
+        String[] split = arguments.strip().split(" +", count);
+        if (split.length != count) throw new IllegalArgumentException("Missing arguments");
+        return split;
+    }
+
+    private static Set<OutputFormat> parseFormats(String formats)
+    {
+        if (formats.equalsIgnoreCase("all")) return EnumSet.allOf(OutputFormat.class);
+        return OutputFormat.parseList(formats);
+    }
+
+    private static void respond(Writer writer, String response) throws IOException
+    {
+        writer.write(response);
+        writer.write("END\n");
+        writer.flush();
+    }
+}
@@ -0,0 +1,32 @@
+package eypdc.assembler;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * How {@link Assembler#compile(String, AssemblyOptions)} and {@link BatchAssembler} assemble a file and what they
+ * write. Built with {@code AssemblyOptions.builder()}, where every option left out keeps the behaviour of a plain run.
+ */
+@Value
+@Builder(toBuilder = true)
+public class AssemblyOptions
+{
+    public static final AssemblyOptions DEFAULT = builder().build();
+
+    @Builder.Default
+    Set<OutputFormat> formats = EnumSet.allOf(OutputFormat.class);
+    // Keep going after an error and report every one instead of only the first
+    boolean collectAllErrors;
+    // Give every result the AssemblyStats of its file, output formats timed
+    boolean collectStats;
+    // Run the Peephole pass, which notes each rewrite in the listings
+    boolean optimize;
+    // Data bytes per S1 record in both S-record outputs
+    @Builder.Default
+    int sRecordLength = SRecordEncoder.DEFAULT_RECORD_LENGTH;
+    // Text of an S0 header record to start the S-record outputs with, or null for none
+    String sRecordHeader;
+}
@@ -0,0 +1,138 @@
+package eypdc.assembler;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything an assembly produced, computed in memory and never modified afterwards, so results can be handed between
+ * threads freely. The memory image is only exposed through read methods. A failed assembly has diagnostics and an
+ * empty image.
+ */
+public class AssemblyResult
+{
+    private final List<String> sourceLines;
+    private final List<CompiledLine> compiledLines;
+    private final MemoryImage image;
+    private final List<Segment> segments;
+    private final SymbolTable symbols;
+    private final List<Diagnostic> diagnostics;
+    // Null unless collecting stats
+    private final AssemblyStats stats;
+
+    /**
+     * Addresses {@code [start, end)} hold code or data.
+     */
+    @Data
+    public static class Segment
+    {
+        private final int start;
+        private final int end;
+
+        public int getLength()
+        {
+            return end - start;
+        }
+    }
+
+    AssemblyResult(List<String> sourceLines, List<CompiledLine> compiledLines, MemoryImage image, SymbolTable symbols,
+                   List<Diagnostic> diagnostics, AssemblyStats stats)
+    {
+        this.sourceLines = Collections.unmodifiableList(sourceLines);
+        this.compiledLines = Collections.unmodifiableList(compiledLines);
+        this.image = image;
+        this.symbols = symbols;
+        this.diagnostics = List.copyOf(diagnostics);
+        this.stats = stats;
+
+        List<Segment> segments = new ArrayList<>();
+        for (int start = image.findSegmentStart(0); start != -1; )
+        {
+            int end = image.findSegmentEnd(start);
+            segments.add(new Segment(start, end));
+            start = image.findSegmentStart(end);
+        }
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    public boolean isSuccessful()
+    {
+        return diagnostics.isEmpty();
+    }
+
+    public List<Diagnostic> getDiagnostics()
+    {
+        return diagnostics;
+    }
+
+    /**
+     * @return the timings and counters of the assembly when {@link AssemblyOptions#isCollectStats()} was set, including
+     * the time spent writing outputs, or null.
+     */
+    public AssemblyStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Contiguous runs of occupied memory in address order.
+     */
+    public List<Segment> getSegments()
+    {
+        return segments;
+    }
+
+    /**
+     * @return a new map from upper case label names to their addresses.
+     */
+    public Map<String, Integer> getLabels()
+    {
+        return Collections.unmodifiableMap(symbols.toMap(SymbolTable.LABEL));
+    }
+
+    /**
+     * @return a new map from upper case EQU names to their values.
+     */
+    public Map<String, Integer> getConstants()
+    {
+        return Collections.unmodifiableMap(symbols.toMap(SymbolTable.CONSTANT));
+    }
+
+    public int read(int address)
+    {
+        return image.read(address);
+    }
+
+    public boolean isOccupied(int address)
+    {
+        return image.isOccupied(address);
+    }
+
+    public byte[] readBytes(int address, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) image.read(address + i);
+        }
+        return bytes;
+    }
+
+    List<String> getSourceLines()
+    {
+        return sourceLines;
+    }
+
+    List<CompiledLine> getCompiledLines()
+    {
+        return compiledLines;
+    }
+
+    MemoryImage getImage()
+    {
+        return image;
+    }
+}
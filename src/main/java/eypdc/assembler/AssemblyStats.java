@@ -0,0 +1,297 @@
+package eypdc.assembler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Where an assembly spent its time and what it produced. Every figure is a primitive counter, so collecting them is
+ * cheap enough to leave on: each phase costs two clock reads and two reads of the thread allocation counter. Timing
+ * every output format separately means timing each writer on each line, so it is only done when asked for.
+ * <p>
+ * Stats of several assemblies can be added together; an instance is not thread-safe.
+ */
+public class AssemblyStats
+{
+    public enum Phase
+    {
+        READ,
+        FIRST_PASS,
+        SECOND_PASS,
+        WRITE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final OutputFormat[] FORMATS = OutputFormat.values();
+    private static final AddressingMode[] MODES = AddressingMode.values();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    private final boolean timingFormats;
+
+    private long files = 0;
+    private final long[] phaseNanos = new long[PHASES.length];
+    private final long[] phaseAllocatedBytes = new long[PHASES.length];
+    private final long[] formatNanos = new long[FORMATS.length];
+    private long lines = 0;
+    private long instructions = 0;
+    private long dataLines = 0;
+    private final long[] instructionsByMode = new long[MODES.length];
+    // Label references left for the second pass to resolve
+    private long forwardReferences = 0;
+    private long segments = 0;
+    private long bytes = 0;
+    private long errors = 0;
+
+    private long phaseStartNanos;
+    private long phaseStartAllocatedBytes;
+
+    public AssemblyStats()
+    {
+        this(false);
+    }
+
+    /**
+     * @param timingFormats also time each output format on its own.
+     */
+    public AssemblyStats(boolean timingFormats)
+    {
+        this.timingFormats = timingFormats;
+    }
+
+    private static boolean isAllocationSupported()
+    {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return false;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long allocatedBytes()
+    {
+        if (!ALLOCATION_SUPPORTED) return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public boolean isTimingFormats()
+    {
+        return timingFormats;
+    }
+
+    void startPhase()
+    {
+        phaseStartAllocatedBytes = allocatedBytes();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    void endPhase(Phase phase)
+    {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStartNanos;
+        phaseAllocatedBytes[phase.ordinal()] += allocatedBytes() - phaseStartAllocatedBytes;
+    }
+
+    void addFormatNanos(OutputFormat format, long nanos)
+    {
+        formatNanos[format.ordinal()] += nanos;
+    }
+
+    /**
+     * Counts what an assembly produced.
+     */
+    void count(AssemblyResult result, int forwardReferences)
+    {
+        files++;
+        lines += result.getSourceLines().size();
+        errors += result.getDiagnostics().size();
+        for (CompiledLine compiledLine : result.getCompiledLines())
+        {
+            if (compiledLine.isEmpty()) continue;
+            AddressingMode addressingMode = compiledLine.getAddressingMode();
+            if (addressingMode == null) dataLines++;
+            else
+            {
+                instructions++;
+                instructionsByMode[addressingMode.ordinal()]++;
+            }
+        }
+        this.forwardReferences += forwardReferences;
+        for (AssemblyResult.Segment segment : result.getSegments())
+        {
+            segments++;
+            bytes += segment.getLength();
+        }
+    }
+
+    public void add(AssemblyStats other)
+    {
+        files += other.files;
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            phaseNanos[i] += other.phaseNanos[i];
+            phaseAllocatedBytes[i] += other.phaseAllocatedBytes[i];
+        }
+        for (int i = 0; i < FORMATS.length; i++)
+        {
+            formatNanos[i] += other.formatNanos[i];
+        }
+        lines += other.lines;
+        instructions += other.instructions;
+        dataLines += other.dataLines;
+        for (int i = 0; i < MODES.length; i++)
+        {
+            instructionsByMode[i] += other.instructionsByMode[i];
+        }
+        forwardReferences += other.forwardReferences;
+        segments += other.segments;
+        bytes += other.bytes;
+        errors += other.errors;
+    }
+
+    public long getPhaseNanos(Phase phase)
+    {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return bytes allocated by the assembling thread during the phase, or 0 when the JVM cannot tell.
+     */
+    public long getPhaseAllocatedBytes(Phase phase)
+    {
+        return phaseAllocatedBytes[phase.ordinal()];
+    }
+
+    public long getFormatNanos(OutputFormat format)
+    {
+        return formatNanos[format.ordinal()];
+    }
+
+    public long getInstructions(AddressingMode addressingMode)
+    {
+        return instructionsByMode[addressingMode.ordinal()];
+    }
+
+    public long getFiles()
+    {
+        return files;
+    }
+
+    public long getLines()
+    {
+        return lines;
+    }
+
+    public long getInstructions()
+    {
+        return instructions;
+    }
+
+    public long getDataLines()
+    {
+        return dataLines;
+    }
+
+    public long getForwardReferences()
+    {
+        return forwardReferences;
+    }
+
+    public long getSegments()
+    {
+        return segments;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    private long getTotalNanos()
+    {
+        long total = 0;
+        for (long nanos : phaseNanos)
+        {
+            total += nanos;
+        }
+        return total;
+    }
+
+    public String toSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-16s %12s %14s%n", "Phase", "Time (ms)", "Allocated (KB)"));
+        for (Phase phase : PHASES)
+        {
+            summary.append(String.format("%-16s %12.3f %14d%n", phase, phaseNanos[phase.ordinal()] / 1e6,
+                                         phaseAllocatedBytes[phase.ordinal()] / 1024));
+            if (phase == Phase.WRITE && timingFormats)
+            {
+                for (OutputFormat format : FORMATS)
+                {
+                    summary.append(String.format("  %-14s %12.3f%n", format.getKey(),
+                                                 formatNanos[format.ordinal()] / 1e6));
+                }
+            }
+        }
+        double totalSeconds = getTotalNanos() / 1e9;
+        summary.append(String.format("%-16s %12.3f%n", "TOTAL", totalSeconds * 1e3));
+        summary.append(String.format("%nFiles %d, lines %d (%.0f lines/s), errors %d%n", files, lines,
+                                     totalSeconds > 0 ? lines / totalSeconds : 0, errors));
+        summary.append(String.format("Instructions %d, FCB lines %d, forward references %d%n", instructions,
+                                     dataLines, forwardReferences));
+        summary.append("By addressing mode:");
+        for (AddressingMode addressingMode : MODES)
+        {
+            summary.append(' ').append(addressingMode.getKey()).append('=')
+                    .append(instructionsByMode[addressingMode.ordinal()]);
+        }
+        summary.append(String.format("%nSegments %d, bytes %d%n", segments, bytes));
+        return summary.toString();
+    }
+
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"files\":").append(files)
+                .append(",\"lines\":").append(lines)
+                .append(",\"errors\":").append(errors)
+                .append(",\"instructions\":").append(instructions)
+                .append(",\"dataLines\":").append(dataLines)
+                .append(",\"forwardReferences\":").append(forwardReferences)
+                .append(",\"segments\":").append(segments)
+                .append(",\"bytes\":").append(bytes)
+                .append(",\"totalNanos\":").append(getTotalNanos());
+
+        json.append(",\"phases\":{");
+        for (Phase phase : PHASES)
+        {
+            if (phase.ordinal() > 0) json.append(',');
+            json.append('"').append(phase).append("\":{\"nanos\":").append(phaseNanos[phase.ordinal()])
+                    .append(",\"allocatedBytes\":").append(phaseAllocatedBytes[phase.ordinal()]).append('}');
+        }
+        json.append('}');
+
+        if (timingFormats)
+        {
+            json.append(",\"formats\":{");
+            for (OutputFormat format : FORMATS)
+            {
+                if (format.ordinal() > 0) json.append(',');
+                json.append('"').append(format.getKey()).append("\":{\"nanos\":")
+                        .append(formatNanos[format.ordinal()]).append('}');
+            }
+            json.append('}');
+        }
+
+        json.append(",\"addressingModes\":{");
+        for (AddressingMode addressingMode : MODES)
+        {
+            if (addressingMode.ordinal() > 0) json.append(',');
+            json.append('"').append(addressingMode.getKey()).append("\":")
+                    .append(instructionsByMode[addressingMode.ordinal()]);
+        }
+        return json.append("}}").toString();
+    }
+}
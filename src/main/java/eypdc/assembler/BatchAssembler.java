@@ -0,0 +1,225 @@
+package eypdc.assembler;
+
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Assembles many source files in one JVM. Inputs may be files, directories (searched recursively for *.asc) or glob
+ * patterns. Files are assembled concurrently on a work-stealing pool by assemblers that share one instruction set, and
+ * every output is written next to its source file. A failing file never stops the others.
+ */
+public class BatchAssembler
+{
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final AssemblyOptions options;
+    private final int parallelism;
+
+    public BatchAssembler(AssemblyOptions options)
+    {
+        this(options, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * With {@link AssemblyOptions#isCollectStats()} set, every result gets the {@link AssemblyStats} of its file.
+     */
+    public BatchAssembler(AssemblyOptions options, int parallelism)
+    {
+        this.options = options;
+        this.parallelism = parallelism;
+    }
+
+    public enum Status
+    {
+        ASSEMBLED, COMPILE_ERROR, FAILED
+    }
+
+    @Data
+    public static class Result
+    {
+        private final Path sourcePath;
+        private final Status status;
+        // One message per diagnostic, or the reason the file could not be assembled
+        private final List<String> messages;
+        // Null unless collecting stats
+        private final AssemblyStats stats;
+    }
+
+    /**
+     * Expands the inputs into the list of source files to assemble, in a stable order and without duplicates.
+     */
+    public static List<Path> findSources(List<String> inputs)
+    {
+        Set<Path> sources = new LinkedHashSet<>();
+        for (String input : inputs)
+        {
+            if (isGlob(input)) sources.addAll(expandGlob(input));
+            else
+            {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) sources.addAll(walk(path, BatchAssembler::isSource));
+                else sources.add(path);
+            }
+        }
+        return new ArrayList<>(sources);
+    }
+
+    public List<Result> assemble(List<Path> sources)
+    {
+        Assembler assembler = new Assembler(InstructionSet.getInstance(), options.isOptimize());
+        ExecutorService executor = Executors.newWorkStealingPool(parallelism);
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<>(sources.size());
+            for (Path source : sources)
+            {
+                futures.add(executor.submit(() -> assemble(assembler, source)));
+            }
+
+            List<Result> results = new ArrayList<>(sources.size());
+            for (Future<Result> future : futures)
+            {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch assembly was interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Unexpected batch assembly failure", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result assemble(Assembler assembler, Path source)
+    {
+        try
+        {
+            Path outputPrefix = source.resolveSibling(Assembler.getRawFilename(source));
+            AssemblyResult result = assembler.assemble(source, outputPrefix, options);
+            if (result.isSuccessful()) return new Result(source, Status.ASSEMBLED, List.of(), result.getStats());
+            return new Result(source, Status.COMPILE_ERROR, result.getDiagnostics().stream()
+                    .map(Diagnostic::getMessage)
+                    .collect(Collectors.toList()), result.getStats());
+        }
+        catch (RuntimeException e)
+        {
+            return new Result(source, Status.FAILED, List.of(String.valueOf(e.getMessage())), null);
+        }
+    }
+
+    /**
+     * Adds up the stats of every file. Phase times are summed over the worker threads, so with more than one job they
+     * add up to more than the elapsed time.
+     */
+    public static AssemblyStats totalStats(List<Result> results)
+    {
+        AssemblyStats total = new AssemblyStats(true);
+        for (Result result : results)
+        {
+            if (result.getStats() != null) total.add(result.getStats());
+        }
+        return total;
+    }
+
+    /**
+     * Prints one line per file that did not assemble followed by the totals.
+     *
+     * @return whether every file was assembled.
+     */
+    public static boolean printSummary(List<Result> results, PrintStream out)
+    {
+        int assembled = 0;
+        int compileErrors = 0;
+        int failed = 0;
+        for (Result result : results)
+        {
+            switch (result.getStatus())
+            {
+                case ASSEMBLED:
+                    assembled++;
+                    continue;
+                case COMPILE_ERROR:
+                    compileErrors++;
+                    break;
+                default:
+                    failed++;
+                    break;
+            }
+            for (String message : result.getMessages())
+            {
+                out.println(result.getSourcePath() + ": " + message);
+            }
+        }
+        out.println(results.size() + " files: " + assembled + " assembled, " + compileErrors +
+                    " with compile errors, " + failed + " failed");
+        return assembled == results.size();
+    }
+
+    static boolean isGlob(String input)
+    {
+        for (int i = 0; i < input.length(); i++)
+        {
+            if (GLOB_CHARACTERS.indexOf(input.charAt(i)) != -1) return true;
+        }
+        return false;
+    }
+
+    private static boolean isSource(Path path)
+    {
+        return Files.isRegularFile(path) && path.getFileName().toString().endsWith(".asc");
+    }
+
+    private static List<Path> expandGlob(String glob)
+    {
+        // Walk from the deepest directory that contains no glob characters
+        int firstGlobCharacter = 0;
+        while (GLOB_CHARACTERS.indexOf(glob.charAt(firstGlobCharacter)) == -1) firstGlobCharacter++;
+        int separator = Math.max(glob.lastIndexOf('/', firstGlobCharacter),
+                                 glob.lastIndexOf(File.separatorChar, firstGlobCharacter));
+        Path root = separator == -1 ? Paths.get("") : Paths.get(glob.substring(0, separator + 1));
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return walk(root, path -> Files.isRegularFile(path) && matcher.matches(path));
+    }
+
+    private static List<Path> walk(Path root, Predicate<Path> filter)
+    {
+        if (!Files.isDirectory(root)) return List.of();
+        try (Stream<Path> paths = Files.walk(root))
+        {
+            return paths.filter(filter).sorted().collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not read directory " + root, e);
+        }
+    }
+}
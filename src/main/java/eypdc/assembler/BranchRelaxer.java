@@ -0,0 +1,379 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Branch relaxation between the two passes. A branch to a label is parsed with its 2 byte relative encoding, and a
+ * JSR to a label with its extended one. Out of range branches then grow: BRA becomes a JMP, BSR a JSR, and a
+ * conditional branch, BRSET or BRCLR the opposite test branching over a JMP to the label. A JSR to a label in page
+ * zero, whether written as one or grown from a BSR, takes direct addressing, and only goes extended if the code
+ * before its label grows past $FF. When
+ * shortening jumps, a JMP to a label a BRA reaches does the same, becoming a BRA until it is out of range.
+ * <p>
+ * Lines only ever grow once, so the rounds end. Each round only checks the references still in their short encoding,
+ * with line addresses kept as size changes in a Fenwick tree indexed by line, so a round costs O(log n) per reference
+ * and nothing is laid out again until the sizes are final. A program whose branches all reach costs one look at each
+ * label reference.
+ */
+class BranchRelaxer
+{
+    private static final String[][] OPPOSITE_BRANCHES = {
+            {"bcc", "bcs"}, {"beq", "bne"}, {"bge", "blt"}, {"bgt", "ble"}, {"bhi", "bls"}, {"bmi", "bpl"},
+            {"bvc", "bvs"}, {"brset", "brclr"}};
+    private static final int FAR_BRANCH_GROWTH = 3;
+
+    private static final class Encoding
+    {
+        private final int opcode;
+        private final AddressingMode addressingMode;
+        private final int cycles;
+        private final Integer jumpOpcode;
+        // Bytes added to the line by switching to this encoding
+        private final int sizeChange;
+
+        private Encoding(int opcode, AddressingMode addressingMode, int cycles, Integer jumpOpcode, int sizeChange)
+        {
+            this.opcode = opcode;
+            this.addressingMode = addressingMode;
+            this.cycles = cycles;
+            this.jumpOpcode = jumpOpcode;
+            this.sizeChange = sizeChange;
+        }
+    }
+
+    // The other encoding of a line, by the opcode it was parsed with
+    private final Map<Integer, Encoding> relaxations = new HashMap<>();
+    // The parsed encoding of a relaxed line, by its current opcode
+    private final Map<Integer, Encoding> restorations = new HashMap<>();
+    private final int jsrExtended;
+    private final int jmpExtended;
+    private final int bsr;
+    // A BSR that does not reach its label in page zero, as a JSR in direct addressing, and back
+    private final Encoding bsrToDirect;
+    private final Encoding directToBsr;
+    private final boolean shortenJumps;
+
+    BranchRelaxer(InstructionSet instructionSet)
+    {
+        this(instructionSet, false);
+    }
+
+    BranchRelaxer(InstructionSet instructionSet, boolean shortenJumps)
+    {
+        this.shortenJumps = shortenJumps;
+        int jmp = instructionSet.getMnemonicId("jmp");
+        jmpExtended = instructionSet.getOpcode(jmp, AddressingMode.EXT);
+        int jmpCycles = instructionSet.getCycles(jmp, AddressingMode.EXT);
+        for (String[] pair : OPPOSITE_BRANCHES)
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                int branch = instructionSet.getMnemonicId(pair[i]);
+                int opposite = instructionSet.getMnemonicId(pair[1 - i]);
+                for (AddressingMode addressingMode : AddressingMode.values())
+                {
+                    if (!instructionSet.supports(branch, addressingMode)) continue;
+                    int cycles = instructionSet.getCycles(branch, addressingMode);
+                    int oppositeOpcode = instructionSet.getOpcode(opposite, addressingMode);
+                    relaxations.put(instructionSet.getOpcode(branch, addressingMode),
+                                    new Encoding(oppositeOpcode, addressingMode, cycles + jmpCycles, jmpExtended,
+                                                 FAR_BRANCH_GROWTH));
+                    restorations.put(oppositeOpcode, new Encoding(instructionSet.getOpcode(branch, addressingMode),
+                                                                  addressingMode, cycles, null, -FAR_BRANCH_GROWTH));
+                }
+            }
+        }
+        addPair(instructionSet, "bra", AddressingMode.REL, "jmp", AddressingMode.EXT);
+        addPair(instructionSet, "bsr", AddressingMode.REL, "jsr", AddressingMode.EXT);
+        addPair(instructionSet, "jsr", AddressingMode.EXT, "jsr", AddressingMode.DIR);
+        addPair(instructionSet, "jmp", AddressingMode.EXT, "bra", AddressingMode.REL);
+        int jsr = instructionSet.getMnemonicId("jsr");
+        jsrExtended = instructionSet.getOpcode(jsr, AddressingMode.EXT);
+        int bsrId = instructionSet.getMnemonicId("bsr");
+        bsr = instructionSet.getOpcode(bsrId, AddressingMode.REL);
+        int sizeChange = instructionSet.getOpcodeSize(jsr, AddressingMode.DIR) -
+                         instructionSet.getOpcodeSize(bsrId, AddressingMode.REL);
+        bsrToDirect = new Encoding(instructionSet.getOpcode(jsr, AddressingMode.DIR), AddressingMode.DIR,
+                                   instructionSet.getCycles(jsr, AddressingMode.DIR), null, sizeChange);
+        directToBsr = new Encoding(bsr, AddressingMode.REL, instructionSet.getCycles(bsrId, AddressingMode.REL), null,
+                                   -sizeChange);
+    }
+
+    private void addPair(InstructionSet instructionSet, String parsed, AddressingMode parsedMode, String relaxed,
+                         AddressingMode relaxedMode)
+    {
+        int parsedId = instructionSet.getMnemonicId(parsed);
+        int relaxedId = instructionSet.getMnemonicId(relaxed);
+        int sizeChange = instructionSet.getOpcodeSize(relaxedId, relaxedMode) + operandSize(relaxedMode) -
+                         instructionSet.getOpcodeSize(parsedId, parsedMode) - operandSize(parsedMode);
+        int parsedOpcode = instructionSet.getOpcode(parsedId, parsedMode);
+        int relaxedOpcode = instructionSet.getOpcode(relaxedId, relaxedMode);
+        int relaxedCycles = instructionSet.getCycles(relaxedId, relaxedMode);
+        int parsedCycles = instructionSet.getCycles(parsedId, parsedMode);
+        relaxations.put(parsedOpcode, new Encoding(relaxedOpcode, relaxedMode, relaxedCycles, null, sizeChange));
+        restorations.put(relaxedOpcode, new Encoding(parsedOpcode, parsedMode, parsedCycles, null, -sizeChange));
+    }
+
+    private static int operandSize(AddressingMode addressingMode)
+    {
+        return addressingMode == AddressingMode.EXT ? 2 : 1;
+    }
+
+    /**
+     * Puts a line relaxed by an earlier run back in the encoding it was parsed with.
+     *
+     * @param relativeFixup whether the line references its label as a branch, which tells a BSR turned JSR in direct
+     *                      addressing from a JSR written as one.
+     */
+    void restore(CompiledLine compiledLine, boolean relativeFixup)
+    {
+        Encoding encoding = relativeFixup && compiledLine.getOpcode() == bsrToDirect.opcode
+                            ? directToBsr : restorations.get(compiledLine.getOpcode());
+        apply(compiledLine, encoding, false);
+    }
+
+    private static void apply(CompiledLine compiledLine, Encoding encoding, boolean relaxed)
+    {
+        compiledLine.setOpcode(encoding.opcode);
+        compiledLine.setAddressingMode(encoding.addressingMode);
+        compiledLine.setCycles(encoding.cycles);
+        compiledLine.setJumpOpcode(encoding.jumpOpcode);
+        compiledLine.setSizeInBytes(compiledLine.getSizeInBytes() + encoding.sizeChange);
+        compiledLine.setRelaxed(relaxed);
+    }
+
+    /**
+     * Relaxes the label references of a program laid out by the first pass. When any line changes, every line after
+     * it in its ORG segment and every label are moved, and the image is written again.
+     *
+     * @param segmentStarts the ORG lines.
+     * @param sizeChanges   the bytes each line gained since it was laid out, or null if none did.
+     * @param errors        where to collect overlapping writes, or null to stop at the first one.
+     * @return whether any line changed.
+     */
+    boolean relax(List<CompiledLine> lines, FixupTable fixups, SymbolTable symbols, BitSet segmentStarts,
+                  int[] sizeChanges, MemoryImage image, List<CompileError> errors) throws CompileError
+    {
+        if (sizeChanges == null && !needsRelaxing(lines, fixups, symbols)) return false;
+
+        Layout layout = new Layout(lines, symbols, segmentStarts, sizeChanges);
+        int[] worklist = new int[fixups.size()];
+        int pending = 0;
+        for (int fixup = 0; fixup < fixups.size(); fixup++)
+        {
+            int symbol = fixups.getSymbol(fixup);
+            if (!symbols.isLabel(symbol)) continue;
+            int i = fixups.getLine(fixup);
+            CompiledLine compiledLine = lines.get(i);
+            if (fixups.getKind(fixup) == FixupTable.Kind.RELATIVE_8)
+            {
+                if (relaxations.containsKey(compiledLine.getOpcode())) worklist[pending++] = fixup;
+            }
+            else if (compiledLine.getOpcode() == jsrExtended && layout.getLabel(symbol) <= 0xFF ||
+                     shortenJumps && compiledLine.getOpcode() == jmpExtended &&
+                     reaches(layout.getAddress(i), compiledLine.getSizeInBytes() - 1, layout.getLabel(symbol)))
+            {
+                layout.change(i, relaxations.get(compiledLine.getOpcode()), true);
+                worklist[pending++] = fixup;
+            }
+        }
+
+        boolean grown = true;
+        while (grown)
+        {
+            grown = false;
+            int kept = 0;
+            for (int k = 0; k < pending; k++)
+            {
+                int fixup = worklist[k];
+                int i = fixups.getLine(fixup);
+                CompiledLine compiledLine = lines.get(i);
+                int target = layout.getLabel(fixups.getSymbol(fixup));
+                boolean keep;
+                if (compiledLine.isRelaxed())
+                {
+                    // A JSR in direct addressing or a JMP turned BRA, which grow back once their label is out of reach.
+                    // A JSR grown from a BSR stays relaxed, so it can be put back in the encoding it was parsed with.
+                    keep = compiledLine.getAddressingMode() == AddressingMode.REL
+                           ? reaches(layout.getAddress(i), compiledLine.getSizeInBytes(), target) : target <= 0xFF;
+                    if (!keep)
+                        layout.change(i, restorations.get(compiledLine.getOpcode()),
+                                      fixups.getKind(fixup) == FixupTable.Kind.RELATIVE_8);
+                }
+                else
+                {
+                    keep = reaches(layout.getAddress(i), compiledLine.getSizeInBytes(), target);
+                    if (!keep && compiledLine.getOpcode() == bsr && target <= 0xFF)
+                    {
+                        // Same size, so nothing moves, but it is still watched in case its label leaves page zero
+                        layout.change(i, bsrToDirect, true);
+                        keep = true;
+                    }
+                    else if (!keep) layout.change(i, relaxations.get(compiledLine.getOpcode()), true);
+                }
+                if (keep) worklist[kept++] = fixup;
+                else grown = true;
+            }
+            pending = kept;
+        }
+        for (int k = 0; k < pending; k++)
+        {
+            CompiledLine compiledLine = lines.get(fixups.getLine(worklist[k]));
+            if (compiledLine.isRelaxed() && compiledLine.getAddressingMode() == AddressingMode.REL)
+                compiledLine.setRewrite("BRA");
+        }
+
+        layout.layOut(image, errors);
+        return true;
+    }
+
+    private boolean needsRelaxing(List<CompiledLine> lines, FixupTable fixups, SymbolTable symbols)
+    {
+        for (int fixup = 0; fixup < fixups.size(); fixup++)
+        {
+            int symbol = fixups.getSymbol(fixup);
+            if (!symbols.isLabel(symbol)) continue;
+            CompiledLine compiledLine = lines.get(fixups.getLine(fixup));
+            int target = symbols.getLabel(symbol);
+            if (fixups.getKind(fixup) == FixupTable.Kind.RELATIVE_8)
+            {
+                if (!reaches(compiledLine.getAddress(), compiledLine.getSizeInBytes(), target) &&
+                    relaxations.containsKey(compiledLine.getOpcode()))
+                    return true;
+            }
+            else if (compiledLine.getOpcode() == jsrExtended && target <= 0xFF) return true;
+            else if (shortenJumps && compiledLine.getOpcode() == jmpExtended &&
+                     reaches(compiledLine.getAddress(), compiledLine.getSizeInBytes() - 1, target))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a relative branch at the end of the line reaches {@code target}.
+     */
+    static boolean reaches(int address, int sizeInBytes, int target)
+    {
+        int jump = target - (address + sizeInBytes);
+        return jump >= Byte.MIN_VALUE && jump <= Byte.MAX_VALUE;
+    }
+
+    /**
+     * Addresses of the lines and labels while the sizes change: the first pass address plus the size changes of the
+     * earlier lines of the same ORG segment.
+     */
+    private static class Layout
+    {
+        private final List<CompiledLine> lines;
+        private final SymbolTable symbols;
+        private final BitSet segmentStarts;
+        // The ORG line each line comes after
+        private final int[] segments;
+        private final int[] sizeChanges;
+        private final int[] tree;
+
+        Layout(List<CompiledLine> lines, SymbolTable symbols, BitSet segmentStarts, int[] sizeChanges)
+        {
+            this.lines = lines;
+            this.symbols = symbols;
+            this.segmentStarts = segmentStarts;
+            segments = new int[lines.size()];
+            this.sizeChanges = sizeChanges != null ? sizeChanges : new int[lines.size()];
+            tree = new int[lines.size() + 1];
+            int segment = 0;
+            for (int i = 0; i < segments.length; i++)
+            {
+                if (segmentStarts.get(i)) segment = i;
+                segments[i] = segment;
+                // Linear construction: each node passes its sum on to its parent
+                tree[i + 1] += this.sizeChanges[i];
+                int parent = i + 1 + ((i + 1) & -(i + 1));
+                if (parent < tree.length) tree[parent] += tree[i + 1];
+            }
+        }
+
+        void change(int line, Encoding encoding, boolean relaxed)
+        {
+            apply(lines.get(line), encoding, relaxed);
+            sizeChanges[line] += encoding.sizeChange;
+            for (int node = line + 1; node < tree.length; node += node & -node)
+            {
+                tree[node] += encoding.sizeChange;
+            }
+        }
+
+        /**
+         * @return the size change of the lines before {@code line}.
+         */
+        private int prefix(int line)
+        {
+            int sum = 0;
+            for (int node = line; node > 0; node -= node & -node)
+            {
+                sum += tree[node];
+            }
+            return sum;
+        }
+
+        private int shift(int line)
+        {
+            return prefix(line) - prefix(segments[line]);
+        }
+
+        int getAddress(int line)
+        {
+            return lines.get(line).getAddress() + shift(line);
+        }
+
+        int getLabel(int symbol)
+        {
+            return symbols.getLabel(symbol) + shift(symbols.getLabelLine(symbol));
+        }
+
+        /**
+         * Moves the lines and labels to their final addresses and writes the image again, checking for overlaps as
+         * the first pass does.
+         */
+        void layOut(MemoryImage image, List<CompileError> errors) throws CompileError
+        {
+            for (int symbol = 0; symbol < symbols.size(); symbol++)
+            {
+                if (symbols.isLabel(symbol)) symbols.setLabel(symbol, getLabel(symbol));
+            }
+
+            image.clear();
+            int shift = 0;
+            for (int i = 0; i < lines.size(); i++)
+            {
+                if (segmentStarts.get(i)) shift = 0;
+                CompiledLine compiledLine = lines.get(i);
+                // Lines removed by the peephole pass are empty but still give back their bytes
+                int sizeChange = sizeChanges[i];
+                if (compiledLine.isEmpty())
+                {
+                    shift += sizeChange;
+                    continue;
+                }
+                compiledLine.setAddress(compiledLine.getAddress() + shift);
+                shift += sizeChange;
+                try
+                {
+                    Assembler.checkWrite(image, compiledLine, i, lines.subList(0, i));
+                    compiledLine.writeTo(image);
+                }
+                catch (CompileError compileError)
+                {
+                    if (errors == null) throw compileError;
+                    errors.add(compileError);
+                    // As in the first pass, a line with an error assembles to nothing
+                    lines.set(i, new CompiledLine());
+                }
+            }
+        }
+    }
+}
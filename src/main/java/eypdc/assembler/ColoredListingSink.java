@@ -0,0 +1,39 @@
+package eypdc.assembler;
+
+import java.io.PrintWriter;
+
+class ColoredListingSink implements OutputSink
+{
+    private final PrintWriter printer;
+    private final MemoryImage image;
+
+    private final StringBuilder line = new StringBuilder();
+    private final char[] chunk = new char[256];
+    private final CycleColumn cycleColumn = new CycleColumn();
+
+    ColoredListingSink(PrintWriter printer, MemoryImage image)
+    {
+        this.printer = printer;
+        this.image = image;
+        printer.println(Printer.HTML_STYLE);
+        printer.println("<div>");
+    }
+
+    @Override
+    public void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+    {
+        line.setLength(0);
+        line.append("<p>").append(lineNumber).append(" : ");
+        compiledLine.appendColoredSpacedRepresentation(line, image).append(" : ");
+        cycleColumn.append(line, originalLine, compiledLine).append(" : ");
+        Printer.appendRewrite(Printer.appendStripped(line, originalLine), compiledLine).append("</p>");
+        Printer.println(printer, line, chunk);
+    }
+
+    @Override
+    public void close()
+    {
+        printer.println("</div>");
+        printer.close();
+    }
+}
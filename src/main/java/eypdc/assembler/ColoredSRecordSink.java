@@ -0,0 +1,96 @@
+package eypdc.assembler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Colored S-records. Lines arrive in source order and are grouped into runs of contiguous addresses. For each run only
+ * the field class of every byte is kept; the values come from the memory image, so records are cut by byte count and
+ * HTML is rendered once, as each record is written.
+ */
+class ColoredSRecordSink implements OutputSink
+{
+    private final PrintWriter printer;
+    private final MemoryImage image;
+    private final int recordLength;
+
+    private byte[] fieldClasses = new byte[256];
+    private final StringBuilder record = new StringBuilder();
+    private final char[] chunk = new char[256];
+    private int startAddress = -1;
+    private int sizeInBytes = 0;
+
+    /**
+     * @param header text of the S0 record to start with, or null for none. It is not colored, as it holds no code.
+     */
+    ColoredSRecordSink(PrintWriter printer, MemoryImage image, int recordLength, String header)
+    {
+        this.printer = printer;
+        this.image = image;
+        this.recordLength = recordLength;
+        printer.println(Printer.HTML_STYLE);
+        if (header == null) return;
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try
+        {
+            SRecordEncoder encoder = new SRecordEncoder(record, recordLength);
+            encoder.writeHeader(header);
+            encoder.flush();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write S-records", e);
+        }
+        printer.println("<p>" + record.toString(StandardCharsets.US_ASCII).strip() + "</p>");
+    }
+
+    @Override
+    public void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+    {
+        if (compiledLine.isEmpty()) return;
+        if (startAddress != -1 && compiledLine.getAddress() != startAddress + sizeInBytes) printSegment();
+        if (startAddress == -1) startAddress = compiledLine.getAddress();
+
+        int lineSize = compiledLine.getSizeInBytes();
+        if (sizeInBytes + lineSize > fieldClasses.length)
+            fieldClasses = Arrays.copyOf(fieldClasses, Math.max(fieldClasses.length * 2, sizeInBytes + lineSize));
+        for (int i = 0; i < lineSize; i++)
+        {
+            fieldClasses[sizeInBytes++] = (byte) compiledLine.getFieldClass(i);
+        }
+    }
+
+    private void printSegment()
+    {
+        for (int offset = 0; offset < sizeInBytes; offset += recordLength)
+        {
+            int address = startAddress + offset;
+            int lineSizeInBytes = Math.min(recordLength, sizeInBytes - offset);
+
+            record.setLength(0);
+            record.append("<p>S1");
+            Hex.appendByte(record, lineSizeInBytes + 3);
+            Hex.append(record, address, 2);
+            for (int i = 0; i < lineSizeInBytes; i++)
+            {
+                Printer.appendColoredByte(record, fieldClasses[offset + i], image.read(address + i));
+            }
+            Hex.appendByte(record, SRecordEncoder.checksum(image, address, lineSizeInBytes)).append("</p>");
+            Printer.println(printer, record, chunk);
+        }
+        startAddress = -1;
+        sizeInBytes = 0;
+    }
+
+    @Override
+    public void close()
+    {
+        if (startAddress != -1) printSegment();
+        printer.println("<p>S9030000FC</p>");
+        printer.close();
+    }
+}
@@ -0,0 +1,33 @@
+package eypdc.assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eypdc.assembler.CompileError")
+@Label("Compile Error")
+@Category("68HC11 Assembler")
+@Description("An error reported for a source line")
+@StackTrace(false)
+class CompileErrorEvent extends jdk.jfr.Event
+{
+    @Label("Source File")
+    @Description("Null for programs assembled in memory")
+    String sourceFile;
+
+    @Label("Line")
+    @Description("One-based, as in the message")
+    int line;
+
+    @Label("Column")
+    @Description("One-based")
+    int column;
+
+    @Label("Error Code")
+    int errorCode;
+
+    @Label("Message")
+    String message;
+}
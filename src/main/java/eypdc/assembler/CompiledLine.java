@@ -1,108 +1,98 @@
 package eypdc.assembler;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
+import java.util.Arrays;
 
 @Data
 public class CompiledLine
 {
+    public static final int OPCODE_FIELD = 0;
+
+    private static final int[] NO_OPERANDS = new int[0];
+
     private Integer address;
     private Integer opcode;
-    private List<Integer> operands = new ArrayList<>();
-    private Map<Integer, String> pendingIndexes = new HashMap<>();
+    // Null for FCB data
+    private AddressingMode addressingMode;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int[] operands = NO_OPERANDS;
+    @Setter(AccessLevel.NONE)
+    private int operandCount = 0;
     private int sizeInBytes = 0;
-
-    private static Map<Integer, String> getMergedRepresentation(List<CompiledLine> compiledLines,
-                                                                Function<CompiledLine, String> getRepresentation)
+    // Bus cycles of the instruction; 0 for FCB data
+    private int cycles = 0;
+    // JMP opcode that follows a branch inverted to reach a far label, whose last operand is then the JMP target
+    private Integer jumpOpcode;
+    // Given another encoding by branch relaxation: a far branch, or a JSR to a label in page zero
+    private boolean relaxed = false;
+    // What the peephole pass assembled the line as instead, for the listing; null when it was left alone
+    private String rewrite;
+
+    public void addOperand(int operand)
     {
-        Map<Integer, List<CompiledLine>> listRepresentation = getListRepresentation(compiledLines);
-        Map<Integer, String> mergedRepresentation = new HashMap<>();
-        StringBuilder stringBuilder = new StringBuilder();
-
-        for (Map.Entry<Integer, List<CompiledLine>> entry : listRepresentation.entrySet())
-        {
-            for (CompiledLine compiledLine : entry.getValue())
-            {
-                stringBuilder.append(getRepresentation.apply(compiledLine));
-            }
-            mergedRepresentation.put(entry.getKey(), stringBuilder.toString());
-            stringBuilder.setLength(0);
-        }
-
-        return mergedRepresentation;
+        if (operandCount == operands.length) operands = Arrays.copyOf(operands, Math.max(2, operandCount * 2));
+        operands[operandCount++] = operand;
     }
 
-    public static Map<Integer, String> getMergedPlainRepresentation(List<CompiledLine> compiledLines)
+    public void clearOperands()
     {
-        return getMergedRepresentation(compiledLines, CompiledLine::getBinaryRepresentation);
+        operandCount = 0;
     }
 
-    public static int getColoredRepresentationEnd(String coloredMergedRepresentation, int startIndex,
-                                                  int totalSizeInBytes)
+    public int getOperand(int index)
     {
-        int bytesCount = 0;
-        int currentIndex = startIndex;
-        int size = coloredMergedRepresentation.length();
-        String toIgnore = "<span class=\"abc\"></span>";
-        while (bytesCount != totalSizeInBytes)
-        {
-            if (currentIndex >= size) throw new RuntimeException("Wrong size in bytes"); // Should never happen
-            char currentChar = coloredMergedRepresentation.charAt(currentIndex);
-            currentIndex++;
-            if (!toIgnore.contains("" + currentChar))
-            {
-                currentIndex++;
-                bytesCount++;
-            }
-        }
-        currentIndex += "</span>".length();
-        return currentIndex;
+        return operands[index];
     }
 
-    public static Map<Integer, String> getMergedColoredRepresentation(List<CompiledLine> compiledLines)
+    public void setOperand(int index, int operand)
     {
-        return getMergedRepresentation(compiledLines, CompiledLine::getColoredRepresentation);
+        operands[index] = operand;
     }
 
-    public static Map<Integer, List<CompiledLine>> getListRepresentation(List<CompiledLine> compiledLines)
+    /**
+     * Encodes the line into the memory image at its address.
+     */
+    public void writeTo(MemoryImage image)
     {
-        List<CompiledLine> currentLines = new ArrayList<>();
-        Map<Integer, List<CompiledLine>> startAddressToLines = new HashMap<>();
-        int currentAddress = -1;
-        int startAddress = -1;
+        if (isEmpty()) return;
+        int opcodeSize = getOpcodeSizeInBytes();
+        image.write(address, opcode, opcodeSize);
 
-        for (CompiledLine compiledLine : compiledLines)
+        int operandSize = getOperandsSizeInBytes();
+        int operandAddress = address + opcodeSize;
+        int inlineOperands = jumpOpcode == null ? operandCount : operandCount - 1;
+        for (int i = 0; i < inlineOperands; i++)
         {
-            if (compiledLine.isEmpty()) continue;
-            // Check if addresses are correct
-            if (startAddress == -1) startAddress = compiledLine.getAddress();
-            else if (currentAddress != -1 && compiledLine.getAddress() != currentAddress)
-            {
-                startAddressToLines.put(startAddress, currentLines);
-                currentLines = new ArrayList<>();
-                startAddress = compiledLine.getAddress();
-            }
-
-            currentLines.add(compiledLine);
-            currentAddress = compiledLine.getAddress() + compiledLine.getSizeInBytes();
+            image.write(operandAddress, operands[i], operandSize);
+            operandAddress += operandSize;
         }
-        if (startAddress == -1) throw new RuntimeException("Start address was not obtained");
-        else startAddressToLines.put(startAddress, currentLines);
+        if (jumpOpcode == null) return;
 
-        return startAddressToLines;
+        // Bcc over JMP: the inverted branch skips the 3 bytes of the JMP to the target
+        image.write(operandAddress, 3);
+        image.write(operandAddress + 1, jumpOpcode);
+        image.write(operandAddress + 2, operands[operandCount - 1], 2);
+    }
+
+    public String getSpacedRepresentation(MemoryImage image)
+    {
+        return appendSpacedRepresentation(new StringBuilder(), image).toString();
     }
 
-    public String getSpacedRepresentation()
+    /**
+     * Appends the address and the bytes of the line, as in "1A2B (8601)".
+     */
+    public StringBuilder appendSpacedRepresentation(StringBuilder builder, MemoryImage image)
     {
-        if (isEmpty()) return "<Vacio>";
+        if (isEmpty()) return builder.append("<Vacio>");
 
-        String repr = Integer.toString(address, 16) + " (" + getBinaryRepresentation() + ")";
-        return repr.toUpperCase();
+        Hex.appendUnpadded(builder, address).append(" (");
+        return Hex.append(builder, image, address, sizeInBytes).append(')');
     }
 
     public int getOpcodeSizeInBytes()
@@ -114,74 +104,61 @@ public class CompiledLine
 
     public int getOperandsSizeInBytes()
     {
-        if (operands.size() > 1) return 1;
+        if (operandCount > 1 || jumpOpcode != null) return 1;
         else return sizeInBytes - getOpcodeSizeInBytes();
     }
 
-    public List<String> getSplitBinaryRepresentation()
+    /**
+     * @return the field the byte at {@code offset} belongs to: {@link #OPCODE_FIELD} for the opcode, then one field
+     * per operand. The JMP of a relaxed branch counts as an opcode, and its target as the field of the offset before
+     * it.
+     */
+    public int getFieldClass(int offset)
     {
-        List<String> binaryRepresentation = new ArrayList<>();
-        if (isEmpty()) return binaryRepresentation;
-        String opcodeRepr = Util.getHexRepresentation(opcode, getOpcodeSizeInBytes());
-        binaryRepresentation.add(opcodeRepr);
-
-        int operandSize = getOperandsSizeInBytes();
-        for (Integer operand : operands)
-        {
-            binaryRepresentation.add(Util.getHexRepresentation(operand, operandSize));
-        }
-
-        return binaryRepresentation;
+        int opcodeSize = getOpcodeSizeInBytes();
+        if (offset < opcodeSize) return OPCODE_FIELD;
+        int field = 1 + (offset - opcodeSize) / getOperandsSizeInBytes();
+        if (jumpOpcode == null || field < operandCount) return field;
+        return offset == opcodeSize + operandCount ? OPCODE_FIELD : operandCount;
     }
 
-    public String getColoredRepresentation()
+    public String getColoredRepresentation(MemoryImage image)
     {
-        List<String> splitRepresentation = getSplitBinaryRepresentation();
-        if (splitRepresentation.isEmpty()) return "";
+        return appendColoredRepresentation(new StringBuilder(), image).toString();
+    }
 
-        StringBuilder coloredRepresentation = new StringBuilder();
+    public StringBuilder appendColoredRepresentation(StringBuilder builder, MemoryImage image)
+    {
+        if (isEmpty()) return builder;
 
-        char cssClass = 'a';
-        for (String element : splitRepresentation)
+        for (int i = 0; i < sizeInBytes; i++)
         {
-            for (String strByte : Util.addSpaceToHexString(element).split(" "))
-            {
-                coloredRepresentation.append("<span class=\"").append(cssClass).append("\">")
-                        .append(strByte).append("</span>");
-            }
-            cssClass++;
+            Printer.appendColoredByte(builder, getFieldClass(i), image.read(address + i));
         }
-
-        return coloredRepresentation.toString();
+        return builder;
     }
 
-    public String getColoredSpacedRepresentation()
+    public String getColoredSpacedRepresentation(MemoryImage image)
     {
-        List<String> splitRepresentation = getSplitBinaryRepresentation();
-        if (splitRepresentation.isEmpty()) return " Vacio ";
-        String coloredRepresentation = getColoredRepresentation();
-
-        return Integer.toString(address, 16).toUpperCase() + " (" + coloredRepresentation + ")";
+        return appendColoredSpacedRepresentation(new StringBuilder(), image).toString();
     }
 
-    public String getBinaryRepresentation()
+    public StringBuilder appendColoredSpacedRepresentation(StringBuilder builder, MemoryImage image)
     {
-        StringBuilder representation = new StringBuilder();
-        for (String element : getSplitBinaryRepresentation())
-        {
-            representation.append(element);
-        }
-        return representation.toString();
+        if (isEmpty()) return builder.append(" Vacio ");
+
+        Hex.appendUnpadded(builder, address).append(" (");
+        return appendColoredRepresentation(builder, image).append(')');
     }
 
-    public boolean isPending()
+    public String getBinaryRepresentation(MemoryImage image)
     {
-        return !pendingIndexes.isEmpty();
+        if (isEmpty()) return "";
+        return Hex.append(new StringBuilder(sizeInBytes * 2), image, address, sizeInBytes).toString();
     }
 
     public boolean isEmpty()
     {
-        return (address == null && opcode == null && operands.isEmpty());
+        return (address == null && opcode == null && operandCount == 0);
     }
 }
-
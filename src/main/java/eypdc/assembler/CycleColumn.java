@@ -0,0 +1,34 @@
+package eypdc.assembler;
+
+/**
+ * The cycle column of the listings: the bus cycles of each instruction and the running total of its block, a block
+ * being the lines from one label to the next. Only lines that assemble to nothing can be labels, so only those are
+ * scanned again.
+ */
+class CycleColumn
+{
+    private final LineScanner scanner = new LineScanner();
+    private int blockCycles = 0;
+
+    /**
+     * Appends "cycles / block total" for an instruction, or "-" for any other line.
+     */
+    StringBuilder append(StringBuilder builder, String originalLine, CompiledLine compiledLine)
+    {
+        if (compiledLine.isEmpty())
+        {
+            if (isLabel(originalLine)) blockCycles = 0;
+            return builder.append('-');
+        }
+        if (compiledLine.getAddressingMode() == null) return builder.append('-');
+
+        blockCycles += compiledLine.getCycles();
+        return builder.append(compiledLine.getCycles()).append(" / ").append(blockCycles);
+    }
+
+    private boolean isLabel(String originalLine)
+    {
+        return scanner.scan(originalLine) && scanner.startsInLabelColumn() && scanner.getFieldCount() == 1 &&
+               !scanner.fieldEqualsIgnoreCase(0, "RESET");
+    }
+}
@@ -0,0 +1,93 @@
+package eypdc.assembler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where a {@link Simulator} run spent its cycles. Every executed address is charged to the closest label at or
+ * before it, which for code written as labelled subroutines and loops gives the cost of each of them; addresses
+ * before the first label go to "-". The report lists the labels from the most to the least expensive, then every
+ * executed instruction in address order.
+ */
+public class CycleProfile
+{
+    private static final String NO_LABEL = "-";
+
+    private final Simulator simulator;
+    private final List<Entry> labels = new ArrayList<>();
+    private final List<Integer> addresses = new ArrayList<>();
+    private final List<String> addressLabels = new ArrayList<>();
+
+    private static class Entry
+    {
+        private final String name;
+        private final int address;
+        private long cycles;
+        private long executions;
+
+        private Entry(String name, int address)
+        {
+            this.name = name;
+            this.address = address;
+        }
+    }
+
+    public CycleProfile(Simulator simulator, Map<String, Integer> labelAddresses)
+    {
+        this.simulator = simulator;
+        List<Entry> sorted = new ArrayList<>();
+        sorted.add(new Entry(NO_LABEL, -1));
+        labelAddresses.forEach((name, address) -> sorted.add(new Entry(name, address)));
+        sorted.sort(Comparator.comparingInt((Entry entry) -> entry.address).thenComparing(entry -> entry.name));
+
+        int next = 0;
+        Entry current = null;
+        for (int address = 0; address < MemoryImage.SIZE; address++)
+        {
+            while (next < sorted.size() && sorted.get(next).address <= address)
+            {
+                current = sorted.get(next++);
+            }
+            long executions = simulator.getExecutionsAt(address);
+            if (executions == 0) continue;
+            current.cycles += simulator.getCyclesAt(address);
+            current.executions += executions;
+            addresses.add(address);
+            addressLabels.add(current.name);
+        }
+
+        for (Entry entry : sorted)
+        {
+            if (entry.executions > 0) labels.add(entry);
+        }
+        labels.sort(Comparator.comparingLong((Entry entry) -> -entry.cycles).thenComparingInt(entry -> entry.address));
+    }
+
+    public String toReport()
+    {
+        long totalCycles = Math.max(1, simulator.getCycles());
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Status:       %s%n", simulator.getStatus()));
+        report.append(String.format("Cycles:       %d%n", simulator.getCycles()));
+        report.append(String.format("Instructions: %d%n", simulator.getInstructions()));
+        report.append(String.format("PC:           $%04X%n", simulator.getPc()));
+
+        report.append(String.format("%n%-16s %12s %12s %6s%n", "Label", "Cycles", "Executed", "Share"));
+        for (Entry entry : labels)
+        {
+            report.append(String.format("%-16s %12d %12d %5.1f%%%n", entry.name, entry.cycles, entry.executions,
+                                        100.0 * entry.cycles / totalCycles));
+        }
+
+        report.append(String.format("%n%-8s %12s %12s  %s%n", "Address", "Cycles", "Executed", "Label"));
+        for (int i = 0; i < addresses.size(); i++)
+        {
+            int address = addresses.get(i);
+            report.append(String.format("$%04X    %12d %12d  %s%n", address, simulator.getCyclesAt(address),
+                                        simulator.getExecutionsAt(address), addressLabels.get(i)));
+        }
+        return report.toString();
+    }
+}
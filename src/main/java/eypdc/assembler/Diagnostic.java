@@ -0,0 +1,25 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+import lombok.Data;
+
+/**
+ * A problem found while assembling. {@code line} and {@code column} are zero-based; the column points at the field the
+ * error is about (label, mnemonic or operand). The message already names the line as the listing does
+ * ("Error 4: ... (Linea 12)").
+ */
+@Data
+public class Diagnostic
+{
+    private final int line;
+    private final int column;
+    private final int errorCode;
+    private final Class<? extends CompileError> type;
+    private final String message;
+
+    static Diagnostic of(CompileError compileError, int column)
+    {
+        return new Diagnostic(compileError.getErrorOffset(), column, compileError.getErrorCode(),
+                              compileError.getClass(), compileError.getMessage());
+    }
+}
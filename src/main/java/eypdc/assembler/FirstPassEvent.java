@@ -0,0 +1,30 @@
+package eypdc.assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eypdc.assembler.FirstPass")
+@Label("First Pass")
+@Category("68HC11 Assembler")
+@Description("Parsing and encoding every line of a program, leaving label references for the second pass")
+@StackTrace(false)
+class FirstPassEvent extends jdk.jfr.Event
+{
+    @Label("Source File")
+    @Description("Null for programs assembled in memory")
+    String sourceFile;
+
+    @Label("Line Count")
+    int lineCount;
+
+    @Label("Label References")
+    int labelReferences;
+
+    @Label("Image Size")
+    @DataAmount
+    int imageSize;
+}
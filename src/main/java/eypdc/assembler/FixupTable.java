@@ -0,0 +1,82 @@
+package eypdc.assembler;
+
+import java.util.Arrays;
+
+/**
+ * Label references the first pass could not resolve. Each fixup stores the line that holds the reference, the operand
+ * slot to patch, how to encode the target and the {@link SymbolTable} id of the referenced label, in parallel primitive arrays. The
+ * second pass walks only this table, so resolving labels costs one step per reference instead of one per line.
+ */
+class FixupTable
+{
+    enum Kind
+    {
+        RELATIVE_8,
+        ABSOLUTE_16;
+
+        private static final Kind[] VALUES = values();
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size = 0;
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] symbols = new int[INITIAL_CAPACITY];
+
+    void add(int line, int slot, Kind kind, int symbol)
+    {
+        if (size == lines.length)
+        {
+            int capacity = size * 2;
+            lines = Arrays.copyOf(lines, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+        lines[size] = line;
+        slots[size] = slot;
+        kinds[size] = (byte) kind.ordinal();
+        symbols[size] = symbol;
+        size++;
+    }
+
+    /**
+     * Drops the fixups added after the table had {@code size} entries.
+     */
+    void truncate(int size)
+    {
+        this.size = size;
+    }
+
+    void clear()
+    {
+        size = 0;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int getLine(int fixup)
+    {
+        return lines[fixup];
+    }
+
+    int getSlot(int fixup)
+    {
+        return slots[fixup];
+    }
+
+    Kind getKind(int fixup)
+    {
+        return Kind.VALUES[kinds[fixup]];
+    }
+
+    int getSymbol(int fixup)
+    {
+        return symbols[fixup];
+    }
+}
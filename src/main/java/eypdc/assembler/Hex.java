@@ -0,0 +1,127 @@
+package eypdc.assembler;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Upper case hex formatting straight into a caller's {@code char[]}, {@code byte[]} or {@link StringBuilder}. Every
+ * byte value has its two digits precomputed, so a byte costs two table reads and nothing is allocated. Values that do
+ * not fit the requested size are masked, which gives the two's complement of negative values for free.
+ */
+public class Hex
+{
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] LOWER_CASE_DIGITS = "0123456789abcdef".toCharArray();
+    // Both digits of every byte value: PAIRS[2 * value] and PAIRS[2 * value + 1]
+    private static final char[] PAIRS = new char[256 * 2];
+    private static final byte[] ASCII_PAIRS = new byte[256 * 2];
+
+    static
+    {
+        for (int value = 0; value < 256; value++)
+        {
+            PAIRS[value * 2] = DIGITS[value >>> 4];
+            PAIRS[value * 2 + 1] = DIGITS[value & 0xF];
+        }
+        byte[] ascii = new String(PAIRS).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(ascii, 0, ASCII_PAIRS, 0, ascii.length);
+    }
+
+    /**
+     * Appends the two digits of the low byte of {@code value}.
+     */
+    public static StringBuilder appendByte(StringBuilder builder, int value)
+    {
+        int pair = (value & 0xFF) * 2;
+        return builder.append(PAIRS[pair]).append(PAIRS[pair + 1]);
+    }
+
+    /**
+     * Appends the low {@code sizeInBytes} bytes of {@code value}, most significant first, zero padded to two digits per
+     * byte. Bytes beyond the fourth are zero.
+     */
+    public static StringBuilder append(StringBuilder builder, int value, int sizeInBytes)
+    {
+        for (int i = sizeInBytes - 1; i >= 0; i--)
+        {
+            appendByte(builder, i < 4 ? value >>> (8 * i) : 0);
+        }
+        return builder;
+    }
+
+    /**
+     * Appends {@code sizeInBytes} bytes of the image starting at {@code address} with no separator.
+     */
+    public static StringBuilder append(StringBuilder builder, MemoryImage image, int address, int sizeInBytes)
+    {
+        for (int i = 0; i < sizeInBytes; i++)
+        {
+            appendByte(builder, image.read(address + i));
+        }
+        return builder;
+    }
+
+    /**
+     * Appends {@code value} with no leading zeros, like {@link Integer#toString(int, int)} with radix 16 but upper case.
+     */
+    public static StringBuilder appendUnpadded(StringBuilder builder, int value)
+    {
+        if (value < 0)
+        {
+            builder.append('-');
+            // Integer.MIN_VALUE stays negative, but read unsigned it is its own magnitude
+            value = -value;
+        }
+        return appendDigits(builder, value, DIGITS);
+    }
+
+    /**
+     * Appends {@code value} read unsigned with no leading zeros, like {@link Integer#toHexString(int)}.
+     */
+    public static StringBuilder appendUnsignedLowerCase(StringBuilder builder, int value)
+    {
+        return appendDigits(builder, value, LOWER_CASE_DIGITS);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder builder, int value, char[] digits)
+    {
+        for (int shift = getDigitCount(value) * 4 - 4; shift >= 0; shift -= 4)
+        {
+            builder.append(digits[(value >>> shift) & 0xF]);
+        }
+        return builder;
+    }
+
+    /**
+     * @return how many hex digits {@code value} takes, read unsigned, with at least one.
+     */
+    public static int getDigitCount(int value)
+    {
+        return Math.max(1, (Integer.SIZE - Integer.numberOfLeadingZeros(value) + 3) / 4);
+    }
+
+    /**
+     * Writes the two digits of the low byte of {@code value} at {@code position}.
+     *
+     * @return the position after them.
+     */
+    public static int putByte(char[] buffer, int position, int value)
+    {
+        int pair = (value & 0xFF) * 2;
+        buffer[position] = PAIRS[pair];
+        buffer[position + 1] = PAIRS[pair + 1];
+        return position + 2;
+    }
+
+    /**
+     * Writes the two digits of the low byte of {@code value} at {@code position} as ASCII.
+     *
+     * @return the position after them.
+     */
+    public static int putByte(byte[] buffer, int position, int value)
+    {
+        int pair = (value & 0xFF) * 2;
+        buffer[position] = ASCII_PAIRS[pair];
+        buffer[position + 1] = ASCII_PAIRS[pair + 1];
+        return position + 2;
+    }
+}
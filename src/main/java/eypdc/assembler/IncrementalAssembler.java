@@ -0,0 +1,482 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Reassembles a source after an edit, reusing what the previous run learned about every line. Lines outside the
+ * edited region keep their parsed statements. Inside it, a line whose text was removed elsewhere in the region (a moved
+ * block, an undo) is reused as long as the constants it looked up still have the same values. A dependency index from
+ * symbols to the lines that reference them tells which lines after the edit must be parsed again because a constant
+ * changed, and which fixups must be resolved again because a label moved. Lines that only moved get a new address
+ * without being re-encoded.
+ * <p>
+ * Results are valid until the next update. Any compile error drops the cached state, so the following update
+ * assembles from scratch. The peephole pass is never run, as it looks across lines.
+ */
+public class IncrementalAssembler
+{
+    private final Assembler assembler;
+    private final LineScanner scanner = new LineScanner();
+    private final Statement statement = new Statement();
+    private final FixupTable fixups = new FixupTable();
+    // Every label reference of the program, in line order, for branch relaxation
+    private final FixupTable layoutFixups = new FixupTable();
+    // Names keep their ids across updates; values are defined again by each update
+    private final RecordingSymbolTable symbols = new RecordingSymbolTable();
+
+    private List<Line> lines = new ArrayList<>();
+    // Lines that looked each symbol id up
+    private final List<Set<Line>> references = new ArrayList<>();
+    // Label addresses of the last update, by symbol id
+    private boolean[] hadLabel = new boolean[0];
+    private int[] labelAddresses = new int[0];
+    private List<CompiledLine> compiledLines = List.of();
+    private MemoryImage image = new MemoryImage();
+    private int parsedLineCount = 0;
+
+    public IncrementalAssembler()
+    {
+        this(new Assembler());
+    }
+
+    IncrementalAssembler(Assembler assembler)
+    {
+        this.assembler = assembler;
+    }
+
+    private static class Line
+    {
+        private final String text;
+        private final Statement.Kind kind;
+        private final int symbol;
+        private final int value;
+        private final CompiledLine compiledLine;
+        // Constants looked up while parsing (labels included) and the value each one had, null when undefined
+        private final int[] dependencies;
+        private final Integer[] dependencyValues;
+        private final int[] fixupSlots;
+        private final FixupTable.Kind[] fixupKinds;
+        private final int[] fixupSymbols;
+
+        private int index;
+        private boolean needsResolving = true;
+
+        Line(String text, Statement statement, int[] dependencies, Integer[] dependencyValues, FixupTable fixups)
+        {
+            this.text = text;
+            this.kind = statement.getKind();
+            this.symbol = statement.getSymbol();
+            this.value = statement.getValue();
+            this.compiledLine = kind == Statement.Kind.CODE ? statement.getCompiledLine() : new CompiledLine();
+            this.dependencies = dependencies;
+            this.dependencyValues = dependencyValues;
+
+            fixupSlots = new int[fixups.size()];
+            fixupKinds = new FixupTable.Kind[fixups.size()];
+            fixupSymbols = new int[fixups.size()];
+            for (int fixup = 0; fixup < fixups.size(); fixup++)
+            {
+                fixupSlots[fixup] = fixups.getSlot(fixup);
+                fixupKinds[fixup] = fixups.getKind(fixup);
+                fixupSymbols[fixup] = fixups.getSymbol(fixup);
+            }
+        }
+
+        boolean hasRelativeFixup()
+        {
+            for (FixupTable.Kind fixupKind : fixupKinds)
+            {
+                if (fixupKind == FixupTable.Kind.RELATIVE_8) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A symbol table that can record which constants are looked up while a line is parsed.
+     */
+    private static class RecordingSymbolTable extends SymbolTable
+    {
+        private int[] lookups = new int[8];
+        private int lookupCount = 0;
+        private boolean recording = false;
+
+        void startRecording()
+        {
+            lookupCount = 0;
+            recording = true;
+        }
+
+        int[] stopRecording()
+        {
+            recording = false;
+            return Arrays.copyOf(lookups, lookupCount);
+        }
+
+        Integer peekConstant(int id)
+        {
+            return super.isConstant(id) ? getConstant(id) : null;
+        }
+
+        @Override
+        boolean isConstant(int id)
+        {
+            if (recording) record(id);
+            return super.isConstant(id);
+        }
+
+        private void record(int id)
+        {
+            for (int i = 0; i < lookupCount; i++)
+            {
+                if (lookups[i] == id) return;
+            }
+            if (lookupCount == lookups.length) lookups = Arrays.copyOf(lookups, lookupCount * 2);
+            lookups[lookupCount++] = id;
+        }
+    }
+
+    public synchronized List<CompiledLine> getCompiledLines()
+    {
+        return compiledLines;
+    }
+
+    public synchronized MemoryImage getImage()
+    {
+        return image;
+    }
+
+    public synchronized Map<String, Integer> getLabels()
+    {
+        return Collections.unmodifiableMap(symbols.toMap(SymbolTable.LABEL));
+    }
+
+    /**
+     * @return how many lines the last update had to parse.
+     */
+    public synchronized int getParsedLineCount()
+    {
+        return parsedLineCount;
+    }
+
+    /**
+     * Assembles the new version of the source and writes the formats of {@code options} to {@code outputPrefix}, like
+     * {@link Assembler#assemble(Path, Path, AssemblyOptions)} does for a source file. A version that does not assemble
+     * is assembled again in full to find its diagnostics, as an update stops at the first one, and only those
+     * diagnostics are written to the listing. {@link AssemblyOptions#isOptimize()} and
+     * {@link AssemblyOptions#isCollectStats()} are not read here.
+     *
+     * @return the diagnostics of the new version, empty when it assembled.
+     */
+    public synchronized List<Diagnostic> assemble(List<String> sourceLines, Path outputPrefix, AssemblyOptions options)
+    {
+        Printer printer = new Printer(outputPrefix.toString(), options.getSRecordLength(), options.getSRecordHeader());
+        try
+        {
+            update(sourceLines);
+        }
+        catch (CompileError compileError)
+        {
+            AssemblyResult result = assembler.assemble(sourceLines, options.isCollectAllErrors());
+            printer.print(options.getFormats(), result);
+            return result.getDiagnostics();
+        }
+        printer.print(options.getFormats(), compiledLines, sourceLines, image);
+        return List.of();
+    }
+
+    public synchronized void update(List<String> sourceLines) throws CompileError
+    {
+        try
+        {
+            layOut(sourceLines);
+        }
+        catch (CompileError | RuntimeException e)
+        {
+            lines = new ArrayList<>();
+            references.clear();
+            symbols.clearValues();
+            hadLabel = new boolean[0];
+            compiledLines = List.of();
+            image = new MemoryImage();
+            throw e;
+        }
+    }
+
+    private void layOut(List<String> sourceLines) throws CompileError
+    {
+        List<Line> oldLines = lines;
+        int oldSize = oldLines.size();
+        int newSize = sourceLines.size();
+
+        // The edited region is whatever lies between the common prefix and the common suffix
+        int limit = Math.min(oldSize, newSize);
+        int prefix = 0;
+        while (prefix < limit && oldLines.get(prefix).text.equals(sourceLines.get(prefix))) prefix++;
+        int suffix = 0;
+        while (suffix < limit - prefix &&
+               oldLines.get(oldSize - 1 - suffix).text.equals(sourceLines.get(newSize - 1 - suffix))) suffix++;
+        int oldEnd = oldSize - suffix;
+        int newEnd = newSize - suffix;
+
+        Map<String, Line> removedLines = new HashMap<>();
+        Set<Integer> changedConstants = new HashSet<>();
+        for (int i = prefix; i < oldEnd; i++)
+        {
+            Line line = oldLines.get(i);
+            unregister(line);
+            if (line.kind == Statement.Kind.EQU) changedConstants.add(line.symbol);
+            removedLines.putIfAbsent(line.text, line);
+        }
+
+        List<Line> newLines = new ArrayList<>(newSize);
+        List<CompiledLine> newCompiledLines = new ArrayList<>(newSize);
+        MemoryImage newImage = new MemoryImage();
+        Set<Line> staleLines = Set.of();
+        Integer targetAddress = null;
+        boolean hasEndDirective = false;
+        BitSet segmentStarts = new BitSet();
+        layoutFixups.clear();
+        symbols.clearValues();
+        parsedLineCount = 0;
+
+        for (int i = 0; i < newSize; i++)
+        {
+            Line line;
+            if (i < prefix) line = oldLines.get(i);
+            else if (i < newEnd)
+            {
+                String text = sourceLines.get(i);
+                line = removedLines.remove(text);
+                if (line != null && isUpToDate(line)) register(line);
+                else line = parse(text, i, hasEndDirective, targetAddress != null);
+                line.needsResolving = true;
+                if (line.kind == Statement.Kind.EQU) changedConstants.add(line.symbol);
+            }
+            else
+            {
+                if (i == newEnd) staleLines = findReferences(changedConstants);
+                line = oldLines.get(i - newEnd + oldEnd);
+                if (staleLines.contains(line))
+                {
+                    unregister(line);
+                    line = parse(line.text, i, hasEndDirective, targetAddress != null);
+                }
+            }
+            line.index = i;
+
+            // Same checks as the first pass, for lines that were not parsed again
+            if (line.kind != Statement.Kind.BLANK && hasEndDirective) throw new EndConflictError(i);
+            switch (line.kind)
+            {
+                case EQU:
+                    symbols.defineConstant(line.symbol, line.value);
+                    break;
+                case LABEL:
+                    if (targetAddress == null) throw new NonexistentOrgDirective(i);
+                    if (symbols.isLabel(line.symbol)) throw new ExistingLabelError(i);
+                    symbols.defineLabel(line.symbol, targetAddress, i);
+                    break;
+                case ORG:
+                    targetAddress = line.value;
+                    segmentStarts.set(i);
+                    break;
+                case END:
+                    hasEndDirective = true;
+                    break;
+                case CODE:
+                    if (targetAddress == null) throw new NonexistentOrgDirective(i);
+                    CompiledLine compiledLine = line.compiledLine;
+                    // Relaxed for the previous version, maybe needlessly now
+                    if (compiledLine.isRelaxed())
+                    {
+                        assembler.getRelaxer().restore(compiledLine, line.hasRelativeFixup());
+                        line.needsResolving = true;
+                    }
+                    for (int fixup = 0; fixup < line.fixupSlots.length; fixup++)
+                    {
+                        layoutFixups.add(i, line.fixupSlots[fixup], line.fixupKinds[fixup], line.fixupSymbols[fixup]);
+                    }
+                    if (!targetAddress.equals(compiledLine.getAddress()))
+                    {
+                        // Shifted by an edit above it: only relative operands depend on the address
+                        compiledLine.setAddress(targetAddress);
+                        if (line.hasRelativeFixup()) line.needsResolving = true;
+                    }
+                    Assembler.checkWrite(newImage, compiledLine, i, newCompiledLines);
+                    compiledLine.writeTo(newImage);
+                    targetAddress += compiledLine.getSizeInBytes();
+                    break;
+                default:
+                    break;
+            }
+            newLines.add(line);
+            newCompiledLines.add(line.compiledLine);
+        }
+        if (!hasEndDirective) throw new NonexistentEndDirectiveError(newSize);
+        for (Line line : removedLines.values())
+        {
+            unregister(line);
+        }
+
+        // Relaxation moves lines without going through the checks above, so their fixups are all resolved again
+        if (assembler.getRelaxer().relax(newCompiledLines, layoutFixups, symbols, segmentStarts, null, newImage,
+                                           null))
+        {
+            for (Line line : newLines)
+            {
+                if (line.fixupSlots.length > 0) line.needsResolving = true;
+            }
+        }
+
+        // Labels that moved, appeared or disappeared
+        boolean[] hasLabel = new boolean[symbols.size()];
+        int[] newLabelAddresses = new int[symbols.size()];
+        for (int symbol = 0; symbol < hasLabel.length; symbol++)
+        {
+            hasLabel[symbol] = symbols.isLabel(symbol);
+            newLabelAddresses[symbol] = symbols.getLabel(symbol);
+            boolean hadSymbolLabel = symbol < hadLabel.length && hadLabel[symbol];
+            if (hasLabel[symbol] != hadSymbolLabel ||
+                hasLabel[symbol] && newLabelAddresses[symbol] != labelAddresses[symbol])
+                markForResolving(symbol);
+        }
+
+        // In line order, so the first unresolved label reported is the same as in a full assembly
+        for (Line line : newLines)
+        {
+            if (!line.needsResolving) continue;
+            line.needsResolving = false;
+            for (int fixup = 0; fixup < line.fixupSlots.length; fixup++)
+            {
+                int symbol = line.fixupSymbols[fixup];
+                if (!symbols.isLabel(symbol)) throw new NonexistentLabelError(line.index);
+                line.compiledLine.setOperand(line.fixupSlots[fixup],
+                                             Assembler.resolveFixup(line.compiledLine, line.fixupKinds[fixup],
+                                                                    symbols.getLabel(symbol), line.index));
+            }
+        }
+
+        // Every line was written as it was laid out; lines with fixups are written again once resolved, as the second
+        // pass of a full assembly does
+        for (Line line : newLines)
+        {
+            if (line.fixupSlots.length > 0) line.compiledLine.writeTo(newImage);
+        }
+
+        lines = newLines;
+        hadLabel = hasLabel;
+        labelAddresses = newLabelAddresses;
+        compiledLines = Collections.unmodifiableList(newCompiledLines);
+        image = newImage;
+    }
+
+    private Line parse(String text, int i, boolean hasEndDirective, boolean hasOrgDirective) throws CompileError
+    {
+        parsedLineCount++;
+        fixups.clear();
+        Line line;
+        if (!scanner.scan(text))
+        {
+            statement.set(Statement.Kind.BLANK, Statement.NO_SYMBOL, 0, null);
+            line = new Line(text, statement, new int[0], new Integer[0], fixups);
+        }
+        else
+        {
+            if (hasEndDirective) throw new EndConflictError(i);
+
+            symbols.startRecording();
+            int[] dependencies;
+            try
+            {
+                assembler.parseStatement(scanner, i, hasOrgDirective, symbols, fixups, statement);
+            }
+            finally
+            {
+                dependencies = symbols.stopRecording();
+            }
+
+            Integer[] dependencyValues = new Integer[dependencies.length];
+            for (int j = 0; j < dependencies.length; j++)
+            {
+                dependencyValues[j] = symbols.peekConstant(dependencies[j]);
+            }
+            line = new Line(text, statement, dependencies, dependencyValues, fixups);
+        }
+        register(line);
+        return line;
+    }
+
+    private boolean isUpToDate(Line line)
+    {
+        for (int j = 0; j < line.dependencies.length; j++)
+        {
+            if (!Objects.equals(symbols.peekConstant(line.dependencies[j]), line.dependencyValues[j])) return false;
+        }
+        return true;
+    }
+
+    private void register(Line line)
+    {
+        for (int symbol : line.dependencies)
+        {
+            while (references.size() <= symbol) references.add(null);
+            Set<Line> referencingLines = references.get(symbol);
+            if (referencingLines == null)
+            {
+                referencingLines = Collections.newSetFromMap(new IdentityHashMap<>());
+                references.set(symbol, referencingLines);
+            }
+            referencingLines.add(line);
+        }
+    }
+
+    private void unregister(Line line)
+    {
+        for (int symbol : line.dependencies)
+        {
+            Set<Line> referencingLines = symbol < references.size() ? references.get(symbol) : null;
+            if (referencingLines == null) continue;
+            referencingLines.remove(line);
+            if (referencingLines.isEmpty()) references.set(symbol, null);
+        }
+    }
+
+    private Set<Line> getReferences(int symbol)
+    {
+        Set<Line> referencingLines = symbol < references.size() ? references.get(symbol) : null;
+        return referencingLines == null ? Set.of() : referencingLines;
+    }
+
+    private Set<Line> findReferences(Set<Integer> symbols)
+    {
+        if (symbols.isEmpty()) return Set.of();
+        Set<Line> referencingLines = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int symbol : symbols)
+        {
+            referencingLines.addAll(getReferences(symbol));
+        }
+        return referencingLines;
+    }
+
+    private void markForResolving(int label)
+    {
+        for (Line line : getReferences(label))
+        {
+            line.needsResolving = true;
+        }
+    }
+}
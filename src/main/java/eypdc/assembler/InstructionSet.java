@@ -1,66 +1,163 @@
 package eypdc.assembler;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Data;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Arrays;
 import java.util.Set;
 
-@Data
+/**
+ * Opcode and cycle tables generated at build time from instruction_set.csv, exceptions.json and cycle_counts.csv (see
+ * {@link InstructionTables}).
+ * Mnemonics are interned to dense ids and opcodes are stored in primitive arrays indexed by
+ * {@code id * AddressingMode.count() + mode.ordinal()}, so loading needs no I/O and encoding an instruction needs no
+ * string handling at all.
+ */
 public class InstructionSet
 {
+    public static final int NONEXISTENT = -1;
+
+    private static final int MODES = AddressingMode.count();
+    private static final InstructionSet INSTANCE = new InstructionSet();
+
     private final Set<String> specialDirectives = Set.of("ORG", "EQU", "FCB", "END");
-    private Map<String, Map<String, String>> standard;
-    private Map<String, SpecialInstructionInfo> exceptions;
 
-    public static InstructionSet parseFromJson()
+    private final String[] mnemonics = InstructionTables.MNEMONICS;
+    private final int[] mnemonicTable;
+    private final int[] opcodes = InstructionTables.OPCODES;
+    private final byte[] opcodeSizes = InstructionTables.OPCODE_SIZES;
+    private final byte[] cycles = InstructionTables.CYCLES;
+    private final byte[] specialOperands = InstructionTables.SPECIAL_OPERANDS;
+    private final byte[] immediateSizes = InstructionTables.IMMEDIATE_SIZES;
+
+    private InstructionSet()
     {
-        ClassLoader classLoader = InstructionSet.class.getClassLoader();
-        String path = Objects.requireNonNull(classLoader.getResource("instruction_set.json")).getFile();
+        if (opcodes.length != mnemonics.length * MODES)
+            throw new IllegalStateException("Generated instruction tables do not match the addressing modes");
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        try
+        int tableSize = Integer.highestOneBit(mnemonics.length * 4);
+        mnemonicTable = new int[tableSize];
+        Arrays.fill(mnemonicTable, NONEXISTENT);
+        for (int id = 0; id < mnemonics.length; id++)
         {
-            return objectMapper.readValue(new File(path), InstructionSet.class);
+            String mnemonic = mnemonics[id];
+            int slot = hash(mnemonic, 0, mnemonic.length()) & (tableSize - 1);
+            while (mnemonicTable[slot] != NONEXISTENT) slot = (slot + 1) & (tableSize - 1);
+            mnemonicTable[slot] = id;
         }
-        catch (IOException e)
+    }
+
+    /**
+     * The instruction set is immutable, so every assembler shares this instance.
+     */
+    public static InstructionSet getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private static int hash(CharSequence text, int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++)
         {
-            throw new RuntimeException("Could not open instruction set file", e);
+            hash = 31 * hash + toLowerCase(text.charAt(i));
         }
+        return hash ^ (hash >>> 16);
     }
 
-    public Map<String, String> getStandardOpcodes(String mnemonic)
+    private static char toLowerCase(char c)
     {
-        return standard.get(mnemonic);
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
     }
 
-    public SpecialInstructionInfo getSpecialInstructionInfo(String mnemonic)
+    /**
+     * Case-insensitive lookup of the mnemonic spelled by {@code text[start, end)}.
+     *
+     * @return the mnemonic id, or {@link #NONEXISTENT}.
+     */
+    public int getMnemonicId(CharSequence text, int start, int end)
     {
-        return exceptions.get(mnemonic);
+        int mask = mnemonicTable.length - 1;
+        int slot = hash(text, start, end) & mask;
+        int id;
+        while ((id = mnemonicTable[slot]) != NONEXISTENT)
+        {
+            if (matches(mnemonics[id], text, start, end)) return id;
+            slot = (slot + 1) & mask;
+        }
+        return NONEXISTENT;
     }
 
-    public boolean isSpecialMnemonic(String mnemonic)
+    public int getMnemonicId(CharSequence mnemonic)
     {
-        return exceptions.containsKey(mnemonic);
+        return getMnemonicId(mnemonic, 0, mnemonic.length());
     }
 
-    public boolean containsMnemonic(String mnemonic)
+    private static boolean matches(String mnemonic, CharSequence text, int start, int end)
     {
-        return (standard.containsKey(mnemonic) || exceptions.containsKey(mnemonic));
+        if (mnemonic.length() != end - start) return false;
+        for (int i = start; i < end; i++)
+        {
+            if (mnemonic.charAt(i - start) != toLowerCase(text.charAt(i))) return false;
+        }
+        return true;
     }
 
-    public boolean containsSpecialDirective(String directive)
+    public int getMnemonicCount()
     {
-        return specialDirectives.contains(directive);
+        return mnemonics.length;
+    }
+
+    public String getMnemonic(int mnemonicId)
+    {
+        return mnemonics[mnemonicId];
+    }
+
+    public boolean supports(int mnemonicId, AddressingMode addressingMode)
+    {
+        return opcodes[mnemonicId * MODES + addressingMode.ordinal()] != NONEXISTENT;
+    }
+
+    public int getOpcode(int mnemonicId, AddressingMode addressingMode)
+    {
+        return opcodes[mnemonicId * MODES + addressingMode.ordinal()];
     }
 
-    @Data
-    public static class SpecialInstructionInfo
+    public int getOpcodeSize(int mnemonicId, AddressingMode addressingMode)
     {
-        private int operands;
-        private Map<String, String> addressingModes;
+        return opcodeSizes[mnemonicId * MODES + addressingMode.ordinal()];
+    }
+
+    /**
+     * @return the bus cycles the instruction takes, including the extra cycle of prefixed opcodes, or 0 if the mode
+     * is not supported. Branches take the same time whether they are taken or not.
+     */
+    public int getCycles(int mnemonicId, AddressingMode addressingMode)
+    {
+        return cycles[mnemonicId * MODES + addressingMode.ordinal()];
+    }
+
+    /**
+     * @return the bytes of the operand in immediate mode, 1 or 2 depending on the register the instruction works on,
+     * or 0 if the instruction has no immediate mode.
+     */
+    public int getImmediateSize(int mnemonicId)
+    {
+        return immediateSizes[mnemonicId];
+    }
+
+    public boolean isSpecialMnemonic(int mnemonicId)
+    {
+        return specialOperands[mnemonicId] != 0;
+    }
+
+    /**
+     * @return the number of operands of a special (bit manipulation) instruction.
+     */
+    public int getSpecialOperands(int mnemonicId)
+    {
+        return specialOperands[mnemonicId];
+    }
+
+    public boolean containsSpecialDirective(String directive)
+    {
+        return specialDirectives.contains(directive);
     }
 }
@@ -0,0 +1,15 @@
+package eypdc.assembler;
+
+/**
+ * A memory-mapped peripheral stub for the {@link Simulator}. Every read and write of an address mapped to the device
+ * goes to it instead of memory, so a stub can model a status flag, a port or a timer register as simply as needed.
+ */
+public interface IoDevice
+{
+    /**
+     * @return the byte at {@code address}; only the low 8 bits are used.
+     */
+    int read(int address);
+
+    void write(int address, int value);
+}
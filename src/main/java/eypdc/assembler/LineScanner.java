@@ -0,0 +1,192 @@
+package eypdc.assembler;
+
+import java.util.Arrays;
+
+/**
+ * Hand-written scanner that splits a source line into whitespace separated fields and, on request, a field into
+ * comma separated operands. Only offsets into the line are recorded, so scanning a line allocates nothing; strings are
+ * created only when a caller asks for one. A single instance is reused for every line of a pass.
+ */
+class LineScanner
+{
+    private static final int INITIAL_CAPACITY = 8;
+
+    private CharSequence line;
+    private boolean labelColumn;
+
+    private int fieldCount;
+    private int[] fieldStarts = new int[INITIAL_CAPACITY];
+    private int[] fieldEnds = new int[INITIAL_CAPACITY];
+
+    private int operandCount;
+    private int[] operandStarts = new int[INITIAL_CAPACITY];
+    private int[] operandEnds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Scans a line, ignoring everything after the comment character '*'.
+     *
+     * @return false if the line is blank once the comment is removed.
+     */
+    boolean scan(CharSequence line)
+    {
+        this.line = line;
+        fieldCount = 0;
+        operandCount = 0;
+
+        int end = line.length();
+        for (int i = 0; i < end; i++)
+        {
+            if (line.charAt(i) == '*')
+            {
+                end = i;
+                break;
+            }
+        }
+
+        int i = 0;
+        while (i < end)
+        {
+            while (i < end && isWhitespace(line.charAt(i))) i++;
+            if (i == end) break;
+            int start = i;
+            while (i < end && !isWhitespace(line.charAt(i))) i++;
+            addField(start, i);
+        }
+
+        labelColumn = fieldCount > 0 && fieldStarts[0] == 0;
+        return fieldCount > 0;
+    }
+
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private void addField(int start, int end)
+    {
+        if (fieldCount == fieldStarts.length)
+        {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void addOperand(int start, int end)
+    {
+        if (operandCount == operandStarts.length)
+        {
+            operandStarts = Arrays.copyOf(operandStarts, operandCount * 2);
+            operandEnds = Arrays.copyOf(operandEnds, operandCount * 2);
+        }
+        operandStarts[operandCount] = start;
+        operandEnds[operandCount] = end;
+        operandCount++;
+    }
+
+    /**
+     * Splits the fields from {@code firstField} onwards into operands separated by ",#" (bit manipulation
+     * instructions) or by "," (FCB). Like {@link String#split(String)}, trailing empty operands are dropped.
+     *
+     * @return the number of operands.
+     */
+    int splitOperands(int firstField, boolean hashSeparated)
+    {
+        operandCount = 0;
+        for (int field = firstField; field < fieldCount; field++)
+        {
+            int fieldOperands = operandCount;
+            int end = fieldEnds[field];
+            int operandStart = fieldStarts[field];
+            for (int i = operandStart; i < end; i++)
+            {
+                if (line.charAt(i) != ',') continue;
+                if (hashSeparated && (i + 1 == end || line.charAt(i + 1) != '#')) continue;
+                addOperand(operandStart, i);
+                if (hashSeparated) i++;
+                operandStart = i + 1;
+            }
+            addOperand(operandStart, end);
+
+            while (operandCount > fieldOperands && operandStarts[operandCount - 1] == operandEnds[operandCount - 1])
+                operandCount--;
+        }
+        return operandCount;
+    }
+
+    CharSequence getLine()
+    {
+        return line;
+    }
+
+    boolean startsInLabelColumn()
+    {
+        return labelColumn;
+    }
+
+    int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    int getFieldStart(int field)
+    {
+        return fieldStarts[field];
+    }
+
+    int getFieldEnd(int field)
+    {
+        return fieldEnds[field];
+    }
+
+    boolean fieldEqualsIgnoreCase(int field, String keyword)
+    {
+        int start = fieldStarts[field];
+        int length = fieldEnds[field] - start;
+        if (length != keyword.length()) return false;
+        for (int i = 0; i < length; i++)
+        {
+            if (Character.toUpperCase(line.charAt(start + i)) != Character.toUpperCase(keyword.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    int getOperandStart(int operand)
+    {
+        return operandStarts[operand];
+    }
+
+    int getOperandEnd(int operand)
+    {
+        return operandEnds[operand];
+    }
+
+    /**
+     * @return the symbol id of the field as a label, ignoring any ':' characters. Symbols are case-insensitive.
+     */
+    int internLabel(int field, SymbolTable symbols)
+    {
+        for (int i = fieldStarts[field]; i < fieldEnds[field]; i++)
+        {
+            if (line.charAt(i) == ':') return symbols.intern(getLabel(field));
+        }
+        return symbols.intern(line, fieldStarts[field], fieldEnds[field]);
+    }
+
+    /**
+     * @return the field as an upper case string without any ':' characters.
+     */
+    String getLabel(int field)
+    {
+        StringBuilder label = new StringBuilder(fieldEnds[field] - fieldStarts[field]);
+        for (int i = fieldStarts[field]; i < fieldEnds[field]; i++)
+        {
+            char c = line.charAt(i);
+            if (c != ':') label.append(Character.toUpperCase(c));
+        }
+        return label.toString();
+    }
+}
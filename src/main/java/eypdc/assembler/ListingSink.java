@@ -0,0 +1,37 @@
+package eypdc.assembler;
+
+import java.io.PrintWriter;
+
+class ListingSink implements OutputSink
+{
+    private final PrintWriter printer;
+    private final MemoryImage image;
+
+    private final StringBuilder line = new StringBuilder();
+    private final char[] chunk = new char[256];
+    private final CycleColumn cycleColumn = new CycleColumn();
+
+    ListingSink(PrintWriter printer, MemoryImage image)
+    {
+        this.printer = printer;
+        this.image = image;
+    }
+
+    @Override
+    public void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+    {
+        line.setLength(0);
+        line.append(lineNumber).append(" : ");
+        compiledLine.appendSpacedRepresentation(line, image).append(" : ");
+        cycleColumn.append(line, originalLine, compiledLine).append(" : ");
+        Printer.appendStripped(line, originalLine);
+        Printer.appendRewrite(line, compiledLine);
+        Printer.println(printer, line, chunk);
+    }
+
+    @Override
+    public void close()
+    {
+        printer.close();
+    }
+}
@@ -1,10 +1,211 @@
 package eypdc.assembler;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class Main
 {
-    public static void main(String[] args)
+    private static final String USAGE =
+            "Usage: program [--formats lst,html,obj,s19,s19html,wcet] [--jobs n] [--all-errors] [--optimize]\n" +
+            "               [--stats] [--stats-json file] [--s19-record-length n] [--s19-header text]\n" +
+            "               <filepath|directory|glob>...\n" +
+            "       program [--memory-usage] [--memory-map file] <filepath>\n" +
+            "       program --simulate [--max-cycles n] <filepath.asc|filepath.s19>\n" +
+            "       program --server [--port n] [--sessions n] [--root directory] [--shutdown-token text]\n" +
+            "                        [--all-errors] [--optimize] [--s19-record-length n] [--s19-header text]";
+
+    private static final long DEFAULT_MAX_CYCLES = 100_000_000;
+
+    public static void main(String[] args) throws IOException
+    {
+        Set<OutputFormat> formats = EnumSet.allOf(OutputFormat.class);
+        boolean formatsGiven = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean collectAllErrors = false;
+        boolean optimize = false;
+        int sRecordLength = SRecordEncoder.DEFAULT_RECORD_LENGTH;
+        String sRecordHeader = null;
+        boolean stats = false;
+        String statsJson = null;
+        boolean memoryUsage = false;
+        MemoryMap memoryMap = MemoryMap.DEFAULT;
+        boolean simulate = false;
+        long maxCycles = DEFAULT_MAX_CYCLES;
+        boolean server = false;
+        int port = AssemblerServer.DEFAULT_PORT;
+        int sessions = AssemblerServer.DEFAULT_MAX_SESSIONS;
+        String root = "";
+        String shutdownToken = null;
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--formats"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                formats = OutputFormat.parseList(args[i]);
+                formatsGiven = true;
+            }
+            else if (args[i].equals("--jobs"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                jobs = Integer.parseInt(args[i]);
+                if (jobs < 1) throw new IllegalArgumentException(USAGE);
+            }
+            else if (args[i].equals("--all-errors")) collectAllErrors = true;
+            else if (args[i].equals("--optimize")) optimize = true;
+            else if (args[i].equals("--s19-record-length"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                sRecordLength = Integer.parseInt(args[i]);
+                if (sRecordLength < 1 || sRecordLength > SRecordEncoder.MAX_RECORD_LENGTH)
+                    throw new IllegalArgumentException(USAGE);
+            }
+            else if (args[i].equals("--s19-header"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                sRecordHeader = args[i];
+            }
+            else if (args[i].equals("--stats")) stats = true;
+            else if (args[i].equals("--stats-json"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                statsJson = args[i];
+            }
+            else if (args[i].equals("--memory-usage")) memoryUsage = true;
+            else if (args[i].equals("--memory-map"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                memoryMap = MemoryMap.read(Paths.get(args[i]));
+                memoryUsage = true;
+            }
+            else if (args[i].equals("--simulate")) simulate = true;
+            else if (args[i].equals("--max-cycles"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                maxCycles = Long.parseLong(args[i]);
+                if (maxCycles < 1) throw new IllegalArgumentException(USAGE);
+                simulate = true;
+            }
+            else if (args[i].equals("--server")) server = true;
+            else if (args[i].equals("--port"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                port = Integer.parseInt(args[i]);
+            }
+            else if (args[i].equals("--sessions"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                sessions = Integer.parseInt(args[i]);
+                if (sessions < 1) throw new IllegalArgumentException(USAGE);
+            }
+            else if (args[i].equals("--root"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                root = args[i];
+            }
+            else if (args[i].equals("--shutdown-token"))
+            {
+                if (++i == args.length) throw new IllegalArgumentException(USAGE);
+                shutdownToken = args[i];
+            }
+            else inputs.add(args[i]);
+        }
+
+        boolean collectStats = stats || statsJson != null;
+        AssemblyOptions options = AssemblyOptions.builder()
+                .formats(formats)
+                .collectAllErrors(collectAllErrors)
+                .collectStats(collectStats)
+                .optimize(optimize)
+                .sRecordLength(sRecordLength)
+                .sRecordHeader(sRecordHeader)
+                .build();
+        if (server)
+        {
+            // Requests name their own formats, and the server has no stats, memory usage or simulation to report
+            if (!inputs.isEmpty() || formatsGiven || collectStats || memoryUsage || simulate)
+                throw new IllegalArgumentException(USAGE);
+            AssemblerServer assemblerServer = new AssemblerServer(port, sessions, Paths.get(root), shutdownToken,
+                                                                  options);
+            System.err.println("Listening on localhost:" + assemblerServer.getPort());
+            assemblerServer.run();
+            return;
+        }
+
+        if (inputs.isEmpty()) throw new IllegalArgumentException(USAGE);
+
+        // A single source file keeps the original behaviour: outputs go to the working directory
+        String input = inputs.get(0);
+        if (simulate)
+        {
+            if (inputs.size() != 1) throw new IllegalArgumentException(USAGE);
+            simulate(input, options, maxCycles);
+            return;
+        }
+        if (inputs.size() == 1 && !BatchAssembler.isGlob(input) && !Files.isDirectory(Paths.get(input)))
+        {
+            AssemblyResult result = Assembler.compile(input, options);
+            if (collectStats) reportStats(result.getStats(), stats, statsJson);
+            if (memoryUsage && result.isSuccessful()) System.out.print(new MemoryUsage(result, memoryMap).toSummary());
+            return;
+        }
+        if (memoryUsage) throw new IllegalArgumentException(USAGE);
+
+        BatchAssembler batchAssembler = new BatchAssembler(options, jobs);
+        List<BatchAssembler.Result> results = batchAssembler.assemble(BatchAssembler.findSources(inputs));
+        boolean assembled = BatchAssembler.printSummary(results, System.out);
+        if (collectStats) reportStats(BatchAssembler.totalStats(results), stats, statsJson);
+        if (!assembled) System.exit(1);
+    }
+
+    /**
+     * Runs a source file, assembled first, or an S-record file from the reset vector, or from the start of the first
+     * segment when the vector is not set, and writes the cycle profile of the run to the working directory.
+     */
+    private static void simulate(String input, AssemblyOptions options, long maxCycles) throws IOException
+    {
+        MemoryImage image;
+        Map<String, Integer> labels;
+        String rawFilename;
+        if (input.endsWith(".s19"))
+        {
+            image = SRecordReader.read(Paths.get(input));
+            labels = Map.of();
+            String filename = Paths.get(input).getFileName().toString();
+            rawFilename = filename.substring(0, filename.length() - 4);
+        }
+        else
+        {
+            AssemblyResult result = Assembler.compile(input, options);
+            if (!result.isSuccessful()) System.exit(1);
+            image = result.getImage();
+            labels = result.getLabels();
+            rawFilename = Assembler.getRawFilename(Paths.get(input));
+        }
+        int start = image.findSegmentStart(0);
+        if (start == -1) throw new IllegalArgumentException("Nothing to simulate in " + input);
+
+        Simulator simulator = new Simulator();
+        simulator.load(image);
+        simulator.reset();
+        if (!image.isOccupied(Simulator.RESET_VECTOR) || !image.isOccupied(Simulator.RESET_VECTOR + 1))
+            simulator.setPc(start);
+        Simulator.Status status = simulator.run(maxCycles);
+        Files.writeString(Paths.get(rawFilename + ".prof"), new CycleProfile(simulator, labels).toReport());
+        System.err.printf("%s at $%04X after %d cycles and %d instructions%n", status, simulator.getPc(),
+                          simulator.getCycles(), simulator.getInstructions());
+    }
+
+    private static void reportStats(AssemblyStats assemblyStats, boolean summary, String jsonPath) throws IOException
     {
-        if (args.length != 1) throw new IllegalArgumentException("Usage: program <filepath>");
-        Assembler.compile(args[0]);
+        if (summary) System.err.print(assemblyStats.toSummary());
+        if (jsonPath != null) Files.writeString(Paths.get(jsonPath), assemblyStats.toJson() + "\n");
     }
 }
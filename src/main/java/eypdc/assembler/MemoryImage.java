@@ -0,0 +1,122 @@
+package eypdc.assembler;
+
+import java.util.Arrays;
+
+/**
+ * The 64 KB address space of the 68HC11 as the assembler fills it. Encoded bytes are written straight into a byte
+ * array and an occupancy bitmap records which addresses hold code or data, so contiguous segments are found by
+ * scanning the bitmap a word at a time.
+ */
+public class MemoryImage
+{
+    public static final int SIZE = 0x10000;
+
+    private final byte[] bytes = new byte[SIZE];
+    private final long[] occupied = new long[SIZE / Long.SIZE];
+
+    /**
+     * The assembler checks that every line fits below {@link #SIZE} before writing it, so nothing wraps here.
+     */
+    public void write(int address, int value)
+    {
+        bytes[address] = (byte) value;
+        occupied[address >>> 6] |= 1L << address;
+    }
+
+    /**
+     * Writes {@code value} big-endian over {@code sizeInBytes} bytes. Negative values are stored in two's complement.
+     */
+    public void write(int address, int value, int sizeInBytes)
+    {
+        for (int i = sizeInBytes - 1; i >= 0; i--)
+        {
+            write(address + i, value);
+            value >>= 8;
+        }
+    }
+
+    public void clear()
+    {
+        Arrays.fill(bytes, (byte) 0);
+        Arrays.fill(occupied, 0);
+    }
+
+    public int read(int address)
+    {
+        return bytes[address & (SIZE - 1)] & 0xFF;
+    }
+
+    public boolean isOccupied(int address)
+    {
+        return (occupied[address >>> 6] & (1L << address)) != 0;
+    }
+
+    public int countOccupied()
+    {
+        return countOccupied(0, SIZE);
+    }
+
+    /**
+     * @return how many addresses in {@code [start, end)} are occupied.
+     */
+    public int countOccupied(int start, int end)
+    {
+        if (start >= end) return 0;
+        int firstWord = start >>> 6;
+        int lastWord = (end - 1) >>> 6;
+        int count = 0;
+        for (int word = firstWord; word <= lastWord; word++)
+        {
+            long bits = occupied[word];
+            if (word == firstWord) bits &= -1L << start;
+            if (word == lastWord) bits &= -1L >>> (63 - ((end - 1) & 63));
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * @return the first occupied address among the {@code sizeInBytes} addresses written from {@code address}, or -1
+     * if they are all free.
+     */
+    public int findOccupied(int address, int sizeInBytes)
+    {
+        for (int i = 0; i < sizeInBytes; i++)
+        {
+            int target = address + i;
+            if ((occupied[target >>> 6] & (1L << target)) != 0) return target;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first occupied address at or after {@code address}, or -1 if there is none.
+     */
+    public int findSegmentStart(int address)
+    {
+        if (address >= SIZE) return -1;
+        int word = address >>> 6;
+        long bits = occupied[word] & (-1L << address);
+        while (bits == 0)
+        {
+            if (++word == occupied.length) return -1;
+            bits = occupied[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * @return the first free address after the segment that contains {@code address}, or {@link #SIZE}.
+     */
+    public int findSegmentEnd(int address)
+    {
+        int word = address >>> 6;
+        long bits = ~occupied[word] & (-1L << address);
+        while (bits == 0)
+        {
+            if (++word == occupied.length) return SIZE;
+            bits = ~occupied[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
@@ -0,0 +1,124 @@
+package eypdc.assembler;
+
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Named regions of the address space, such as RAM, EEPROM and ROM, for reporting memory usage. A map is read from a
+ * text file with one region per line, "name start end", both ends included and written as assembler literals:
+ * <pre>
+ * # 68HC11E9
+ * RAM     $0000 $01FF
+ * EEPROM  $B600 $B7FF
+ * ROM     $D000 $FFFF
+ * </pre>
+ * Blank lines and lines starting with '#' are ignored. Regions may not overlap.
+ */
+public class MemoryMap
+{
+    /**
+     * The single-chip map of the 68HC11E9.
+     */
+    public static final MemoryMap DEFAULT = new MemoryMap(List.of(new Region("RAM", 0x0000, 0x0200),
+                                                                  new Region("REGISTERS", 0x1000, 0x1040),
+                                                                  new Region("EEPROM", 0xB600, 0xB800),
+                                                                  new Region("ROM", 0xD000, 0x10000)));
+
+    private final List<Region> regions;
+
+    /**
+     * Addresses {@code [start, end)}.
+     */
+    @Data
+    public static class Region
+    {
+        private final String name;
+        private final int start;
+        private final int end;
+
+        public int getSize()
+        {
+            return end - start;
+        }
+
+        public boolean contains(int address)
+        {
+            return address >= start && address < end;
+        }
+    }
+
+    public MemoryMap(List<Region> regions)
+    {
+        List<Region> sorted = new ArrayList<>(regions);
+        sorted.sort(Comparator.comparingInt(Region::getStart));
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            Region region = sorted.get(i);
+            if (region.getStart() < 0 || region.getEnd() > MemoryImage.SIZE || region.getStart() >= region.getEnd())
+                throw new IllegalArgumentException("Region " + region.getName() + " is outside the address space");
+            if (i > 0 && sorted.get(i - 1).getEnd() > region.getStart())
+                throw new IllegalArgumentException("Regions " + sorted.get(i - 1).getName() + " and " +
+                                                   region.getName() + " overlap");
+        }
+        this.regions = Collections.unmodifiableList(sorted);
+    }
+
+    public static MemoryMap read(Path path)
+    {
+        try
+        {
+            return parse(Files.readAllLines(path));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not read the memory map " + path, e);
+        }
+    }
+
+    public static MemoryMap parse(List<String> lines)
+    {
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++)
+        {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3) throw new IllegalArgumentException("Bad memory map line " + (i + 1) + ": " + line);
+            long start = Assembler.parseNumericLiteral(fields[1], 0, fields[1].length());
+            long last = Assembler.parseNumericLiteral(fields[2], 0, fields[2].length());
+            if (start == Assembler.NOT_A_NUMBER || last == Assembler.NOT_A_NUMBER)
+                throw new IllegalArgumentException("Bad memory map line " + (i + 1) + ": " + line);
+            regions.add(new Region(fields[0].toUpperCase(), (int) Math.min(start, MemoryImage.SIZE),
+                                   (int) Math.min(last + 1, MemoryImage.SIZE + 1)));
+        }
+        return new MemoryMap(regions);
+    }
+
+    /**
+     * Regions in address order.
+     */
+    public List<Region> getRegions()
+    {
+        return regions;
+    }
+
+    /**
+     * @return the region holding {@code address}, or null if it is in none.
+     */
+    public Region find(int address)
+    {
+        for (Region region : regions)
+        {
+            if (region.contains(address)) return region;
+        }
+        return null;
+    }
+}
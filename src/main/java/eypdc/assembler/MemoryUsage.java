@@ -0,0 +1,107 @@
+package eypdc.assembler;
+
+import java.util.List;
+
+/**
+ * How an assembled program fills the regions of a {@link MemoryMap}. Region counts come straight from the occupancy
+ * bitmap of the image, a word at a time, so the report costs next to nothing even for a full 64 KB image.
+ */
+public class MemoryUsage
+{
+    private final MemoryMap memoryMap;
+    private final List<AssemblyResult.Segment> segments;
+    private final int[] usedBytes;
+    private final int totalBytes;
+
+    public MemoryUsage(AssemblyResult result, MemoryMap memoryMap)
+    {
+        this.memoryMap = memoryMap;
+        this.segments = result.getSegments();
+        List<MemoryMap.Region> regions = memoryMap.getRegions();
+        usedBytes = new int[regions.size()];
+        for (int i = 0; i < regions.size(); i++)
+        {
+            usedBytes[i] = result.getImage().countOccupied(regions.get(i).getStart(), regions.get(i).getEnd());
+        }
+        int total = 0;
+        for (AssemblyResult.Segment segment : segments)
+        {
+            total += segment.getLength();
+        }
+        totalBytes = total;
+    }
+
+    public int getUsedBytes(MemoryMap.Region region)
+    {
+        return usedBytes[memoryMap.getRegions().indexOf(region)];
+    }
+
+    /**
+     * @return bytes written outside every region of the map.
+     */
+    public int getBytesOutsideRegions()
+    {
+        int outside = totalBytes;
+        for (int used : usedBytes)
+        {
+            outside -= used;
+        }
+        return outside;
+    }
+
+    public int getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    public String toSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-11s %7s  %s%n", "Segment", "Bytes", "Region"));
+        for (AssemblyResult.Segment segment : segments)
+        {
+            summary.append(String.format("$%04X-$%04X %7d  %s%n", segment.getStart(), segment.getEnd() - 1,
+                                         segment.getLength(), describe(segment)));
+        }
+
+        List<MemoryMap.Region> regions = memoryMap.getRegions();
+        summary.append(String.format("%n%-10s %-11s %7s %7s %6s%n", "Region", "Range", "Used", "Size", "Use"));
+        for (int i = 0; i < regions.size(); i++)
+        {
+            MemoryMap.Region region = regions.get(i);
+            summary.append(String.format("%-10s $%04X-$%04X %7d %7d %5.1f%%%n", region.getName(), region.getStart(),
+                                         region.getEnd() - 1, usedBytes[i], region.getSize(),
+                                         100.0 * usedBytes[i] / region.getSize()));
+        }
+        int outside = getBytesOutsideRegions();
+        if (outside > 0) summary.append(String.format("%d bytes outside every region%n", outside));
+        return summary.toString();
+    }
+
+    /**
+     * Names the regions a segment touches, in address order, with "-" for the parts that lie in none.
+     */
+    private String describe(AssemblyResult.Segment segment)
+    {
+        StringBuilder names = new StringBuilder();
+        int address = segment.getStart();
+        while (address < segment.getEnd())
+        {
+            MemoryMap.Region region = memoryMap.find(address);
+            int next = region != null ? region.getEnd() : nextRegionStart(address);
+            if (names.length() > 0) names.append(", ");
+            names.append(region != null ? region.getName() : "-");
+            address = Math.min(next, segment.getEnd());
+        }
+        return names.toString();
+    }
+
+    private int nextRegionStart(int address)
+    {
+        for (MemoryMap.Region region : memoryMap.getRegions())
+        {
+            if (region.getStart() > address) return region.getStart();
+        }
+        return MemoryImage.SIZE;
+    }
+}
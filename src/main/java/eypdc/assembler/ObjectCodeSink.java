@@ -0,0 +1,42 @@
+package eypdc.assembler;
+
+import java.io.PrintWriter;
+
+class ObjectCodeSink implements OutputSink
+{
+    private static final int MAX_LINE_SIZE_IN_BYTES = 16;
+
+    private final PrintWriter printer;
+    private final MemoryImage image;
+
+    private final StringBuilder line = new StringBuilder();
+    private final char[] chunk = new char[64];
+
+    ObjectCodeSink(PrintWriter printer, MemoryImage image)
+    {
+        this.printer = printer;
+        this.image = image;
+    }
+
+    @Override
+    public void segment(int startAddress, int endAddress)
+    {
+        for (int address = startAddress; address < endAddress; address += MAX_LINE_SIZE_IN_BYTES)
+        {
+            int lineSizeInBytes = Math.min(MAX_LINE_SIZE_IN_BYTES, endAddress - address);
+            line.setLength(0);
+            Hex.appendUnsignedLowerCase(line.append('<'), address).append('>');
+            for (int i = 0; i < lineSizeInBytes; i++)
+            {
+                Hex.appendByte(line.append(' '), image.read(address + i));
+            }
+            Printer.println(printer, line, chunk);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        printer.close();
+    }
+}
@@ -0,0 +1,55 @@
+package eypdc.assembler;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public enum OutputFormat
+{
+    LIST("lst", ".lst"),
+    COLORED_LIST("html", "_lst.html"),
+    OBJECT_CODE("obj", ".s19"),
+    OFFICIAL_OBJECT_CODE("s19", "_official.s19"),
+    COLORED_OFFICIAL_OBJECT_CODE("s19html", "_official_colored.html"),
+    WCET("wcet", ".wcet");
+
+    private final String key;
+    private final String suffix;
+
+    OutputFormat(String key, String suffix)
+    {
+        this.key = key;
+        this.suffix = suffix;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public String getSuffix()
+    {
+        return suffix;
+    }
+
+    /**
+     * Parses a comma separated list of format keys, e.g. "lst,s19".
+     */
+    public static Set<OutputFormat> parseList(String keys)
+    {
+        Set<OutputFormat> formats = EnumSet.noneOf(OutputFormat.class);
+        for (String key : keys.split(","))
+        {
+            formats.add(fromKey(key.strip()));
+        }
+        return formats;
+    }
+
+    public static OutputFormat fromKey(String key)
+    {
+        for (OutputFormat format : values())
+        {
+            if (format.key.equalsIgnoreCase(key)) return format;
+        }
+        throw new IllegalArgumentException("Unknown output format " + key);
+    }
+}
@@ -0,0 +1,18 @@
+package eypdc.assembler;
+
+/**
+ * Receives the compiled program from {@link Printer}, which walks the source lines once and then the memory image
+ * segments once, handing every line and segment to all enabled sinks.
+ */
+interface OutputSink
+{
+    default void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+    {
+    }
+
+    default void segment(int startAddress, int endAddress)
+    {
+    }
+
+    void close();
+}
@@ -0,0 +1,32 @@
+package eypdc.assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("eypdc.assembler.OutputWritten")
+@Label("Output Written")
+@Category("68HC11 Assembler")
+@Description("An output file being closed. All formats are written in the same walk over the program, so the time "
+             + "spent in this format's writer alone, from creating the file to closing it, is the Writer Time")
+@StackTrace(false)
+class OutputWrittenEvent extends jdk.jfr.Event
+{
+    @Label("Output File")
+    String outputFile;
+
+    @Label("Format")
+    String format;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Writer Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long writerTime;
+}
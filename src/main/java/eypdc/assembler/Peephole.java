@@ -0,0 +1,201 @@
+package eypdc.assembler;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Optional peephole pass over the lines laid out by the first pass, before branch relaxation gives them their final
+ * addresses. Its patterns are opcode tables built from the {@link InstructionSet}:
+ * <ul>
+ * <li>LDAA #0 and LDAB #0 become CLRA and CLRB, a byte shorter, unless the carry, which only the clear changes, is
+ * read before anything sets it again;</li>
+ * <li>a JSR followed by an RTS with no label in between becomes a JMP to the subroutine, which then returns for the
+ * caller, and the RTS goes away;</li>
+ * <li>with {@link BranchRelaxer} shortening jumps, a JMP to a label that a BRA reaches becomes a BRA.</li>
+ * </ul>
+ * Rewritten lines keep what they became for the listing. The lines are walked once, backwards, so whether the carry
+ * is live is known at every load; branches, jumps, calls and data are taken as reading it.
+ */
+class Peephole
+{
+    static final String REMOVED = "removed";
+
+    private static final byte READS_CARRY = 1;
+    private static final byte SETS_CARRY = 2;
+    private static final byte TRANSFERS_CONTROL = 3;
+
+    private static final String[] CARRY_READERS = {
+            "adca", "adcb", "sbca", "sbcb", "rol", "rola", "rolb", "ror", "rora", "rorb", "daa", "tpa"};
+    private static final String[] CARRY_SETTERS = {
+            "aba", "adda", "addb", "addd", "sba", "suba", "subb", "subd", "cba", "cmpa", "cmpb", "cpd", "cpx", "cpy",
+            "asl", "asla", "aslb", "asld", "asr", "asra", "asrb", "lsl", "lsla", "lslb", "lsld", "lsr", "lsra", "lsrb",
+            "lsrd", "neg", "nega", "negb", "com", "coma", "comb", "clr", "clra", "clrb", "tst", "tsta", "tstb", "clc",
+            "sec", "mul", "idiv", "fdiv", "tap"};
+    private static final String[] CONTROL_TRANSFERS = {
+            "jmp", "jsr", "rts", "rti", "swi", "wai", "stop", "brset", "brclr"};
+    private static final String[][] CLEARS = {{"ldaa", "clra"}, {"ldab", "clrb"}};
+
+    private static final class Replacement
+    {
+        private final int opcode;
+        private final AddressingMode addressingMode;
+        private final int cycles;
+        private final int sizeInBytes;
+        private final boolean keepsOperands;
+        private final String name;
+
+        private Replacement(InstructionSet instructionSet, String mnemonic, AddressingMode addressingMode,
+                            int operandsSizeInBytes)
+        {
+            int id = instructionSet.getMnemonicId(mnemonic);
+            this.opcode = instructionSet.getOpcode(id, addressingMode);
+            this.addressingMode = addressingMode;
+            this.cycles = instructionSet.getCycles(id, addressingMode);
+            this.sizeInBytes = instructionSet.getOpcodeSize(id, addressingMode) + operandsSizeInBytes;
+            this.keepsOperands = operandsSizeInBytes > 0;
+            this.name = mnemonic.toUpperCase();
+        }
+
+        /**
+         * @return the bytes the line gained.
+         */
+        private int apply(CompiledLine compiledLine)
+        {
+            int sizeChange = sizeInBytes - compiledLine.getSizeInBytes();
+            compiledLine.setOpcode(opcode);
+            compiledLine.setAddressingMode(addressingMode);
+            compiledLine.setCycles(cycles);
+            compiledLine.setSizeInBytes(sizeInBytes);
+            if (!keepsOperands) compiledLine.clearOperands();
+            compiledLine.setRewrite(name);
+            return sizeChange;
+        }
+    }
+
+    // By opcode index, see index()
+    private final byte[] carryEffects = new byte[0x400];
+    private final Replacement[] clears = new Replacement[0x400];
+    private final Replacement[] tailCalls = new Replacement[0x400];
+    private final int rts;
+
+    Peephole(InstructionSet instructionSet)
+    {
+        setEffect(instructionSet, CARRY_READERS, READS_CARRY);
+        setEffect(instructionSet, CARRY_SETTERS, SETS_CARRY);
+        setEffect(instructionSet, CONTROL_TRANSFERS, TRANSFERS_CONTROL);
+
+        for (String[] clear : CLEARS)
+        {
+            int load = instructionSet.getMnemonicId(clear[0]);
+            clears[index(instructionSet.getOpcode(load, AddressingMode.IMM))] =
+                    new Replacement(instructionSet, clear[1], AddressingMode.INH, 0);
+        }
+
+        int jsr = instructionSet.getMnemonicId("jsr");
+        for (AddressingMode addressingMode : AddressingMode.values())
+        {
+            if (!instructionSet.supports(jsr, addressingMode)) continue;
+            // JMP has no direct addressing, so a JSR to page zero becomes an extended JMP
+            tailCalls[index(instructionSet.getOpcode(jsr, addressingMode))] = addressingMode == AddressingMode.DIR
+                    ? new Replacement(instructionSet, "jmp", AddressingMode.EXT, 2)
+                    : new Replacement(instructionSet, "jmp", addressingMode,
+                                      addressingMode == AddressingMode.EXT ? 2 : 1);
+        }
+        rts = instructionSet.getOpcode(instructionSet.getMnemonicId("rts"), AddressingMode.INH);
+    }
+
+    private void setEffect(InstructionSet instructionSet, String[] mnemonics, byte effect)
+    {
+        for (String mnemonic : mnemonics)
+        {
+            int id = instructionSet.getMnemonicId(mnemonic);
+            for (AddressingMode addressingMode : AddressingMode.values())
+            {
+                if (instructionSet.supports(id, addressingMode))
+                    carryEffects[index(instructionSet.getOpcode(id, addressingMode))] = effect;
+            }
+        }
+    }
+
+    /**
+     * Folds the $18, $1A and $CD prefixes of two byte opcodes into a dense index.
+     */
+    private static int index(int opcode)
+    {
+        switch (opcode >>> 8)
+        {
+            case 0:
+                return opcode;
+            case 0x18:
+                return 0x100 | opcode & 0xFF;
+            case 0x1A:
+                return 0x200 | opcode & 0xFF;
+            default:
+                return 0x300 | opcode & 0xFF;
+        }
+    }
+
+    /**
+     * Rewrites {@code lines} in place. Addresses are left as the first pass set them.
+     *
+     * @param segmentStarts the ORG lines.
+     * @return the bytes each line gained, or null when nothing was rewritten.
+     */
+    int[] optimize(List<CompiledLine> lines, SymbolTable symbols, BitSet segmentStarts)
+    {
+        BitSet barriers = (BitSet) segmentStarts.clone();
+        for (int symbol = 0; symbol < symbols.size(); symbol++)
+        {
+            if (symbols.isLabel(symbol)) barriers.set(symbols.getLabelLine(symbol));
+        }
+
+        int[] sizeChanges = null;
+        boolean carryLive = true;
+        // The next instruction, while only blank lines and comments lie between
+        int following = -1;
+        for (int i = lines.size() - 1; i >= 0; i--)
+        {
+            if (barriers.get(i))
+            {
+                following = -1;
+                if (segmentStarts.get(i)) carryLive = true;
+                continue;
+            }
+            CompiledLine compiledLine = lines.get(i);
+            if (compiledLine.isEmpty()) continue;
+            if (compiledLine.getAddressingMode() == null)
+            {
+                carryLive = true;
+                following = -1;
+                continue;
+            }
+
+            Replacement replacement = null;
+            int opcode = index(compiledLine.getOpcode());
+            if (clears[opcode] != null && !carryLive && compiledLine.getOperand(0) == 0) replacement = clears[opcode];
+            else if (tailCalls[opcode] != null && following != -1 && lines.get(following).getOpcode() == rts)
+            {
+                replacement = tailCalls[opcode];
+                if (sizeChanges == null) sizeChanges = new int[lines.size()];
+                sizeChanges[following] -= lines.get(following).getSizeInBytes();
+                CompiledLine removed = new CompiledLine();
+                removed.setRewrite(REMOVED);
+                lines.set(following, removed);
+            }
+            if (replacement != null)
+            {
+                if (sizeChanges == null) sizeChanges = new int[lines.size()];
+                sizeChanges[i] += replacement.apply(compiledLine);
+                opcode = index(compiledLine.getOpcode());
+            }
+
+            byte effect = carryEffects[opcode];
+            if (effect == READS_CARRY || effect == TRANSFERS_CONTROL ||
+                compiledLine.getAddressingMode() == AddressingMode.REL)
+                carryLive = true;
+            else if (effect == SETS_CARRY) carryLive = false;
+            following = i;
+        }
+        return sizeChanges;
+    }
+}
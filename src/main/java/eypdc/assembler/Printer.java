@@ -1,183 +1,294 @@
 package eypdc.assembler;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 public class Printer
 {
+    static final String HTML_STYLE = "<style>" +
+                                     ".a { color: red }" +
+                                     ".b { color: blue }" +
+                                     ".c { color: green }" +
+                                     ".d { color: purple }" +
+                                     "</style>"
+                                     + "<p>El color rojo indica un codigo de instruccion. Los demas colores indican operandos.</p>";
+
     private final String rawFilename;
-    private final String HTML_STYLE = "<style>" +
-                                      ".a { color: red }" +
-                                      ".b { color: blue }" +
-                                      ".c { color: green }" +
-                                      ".d { color: purple }" +
-                                      "</style>"
-                                      + "<p>El color rojo indica un codigo de instruccion. Los demas colores indican operandos.</p>";
+    private final int sRecordLength;
+    // Null without an S0 record
+    private final String sRecordHeader;
 
-    public Printer(String rawFilename)
+    /**
+     * Renders one byte as a span whose CSS class ('a', 'b', ...) is picked by its field.
+     */
+    static void appendColoredByte(StringBuilder builder, int fieldClass, int value)
     {
-        this.rawFilename = rawFilename;
+        builder.append("<span class=\"").append((char) ('a' + fieldClass)).append("\">");
+        Hex.appendByte(builder, value).append("</span>");
     }
 
-    public void printErrorToList(String errorMessage)
+    /**
+     * Appends {@code text} as {@link String#strip()} would return it.
+     */
+    static StringBuilder appendStripped(StringBuilder builder, String text)
     {
-        PrintWriter printer = createOutputFile(rawFilename + ".lst");
-        printer.println(errorMessage);
-        printer.close();
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        return builder.append(text, start, end);
     }
 
-    public void printList(List<CompiledLine> compiledLines, List<String> originalLines)
+    /**
+     * Appends " [peephole: CLRA]" after a line the peephole pass rewrote.
+     */
+    static StringBuilder appendRewrite(StringBuilder builder, CompiledLine compiledLine)
     {
-        PrintWriter printer = createOutputFile(rawFilename + ".lst");
+        if (compiledLine.getRewrite() == null) return builder;
+        return builder.append(" [peephole: ").append(compiledLine.getRewrite()).append(']');
+    }
 
-        if (compiledLines.size() != originalLines.size())
-            throw new RuntimeException("Compiled lines and original don't match");
-        for (int i = 0; i < compiledLines.size(); i++)
+    /**
+     * Writes {@code line} and a line separator through {@code chunk}, without turning the builder into a String.
+     */
+    static void println(PrintWriter printer, StringBuilder line, char[] chunk)
+    {
+        for (int start = 0; start < line.length(); start += chunk.length)
         {
-            CompiledLine currentCompiledLine = compiledLines.get(i);
-            String currentOriginalLine = originalLines.get(i).strip();
-            printer.println(i + " : " + currentCompiledLine.getSpacedRepresentation() + " : " + currentOriginalLine);
+            int end = Math.min(line.length(), start + chunk.length);
+            line.getChars(start, end, chunk, 0);
+            printer.write(chunk, 0, end - start);
         }
-        printer.close();
+        printer.println();
     }
 
-    public void printColoredList(List<CompiledLine> compiledLines, List<String> originalLines)
+    public Printer(String rawFilename)
     {
-        PrintWriter printer = createOutputFile(rawFilename + "_lst.html");
-
-        if (compiledLines.size() != originalLines.size())
-            throw new RuntimeException("Compiled lines and original don't match");
+        this(rawFilename, SRecordEncoder.DEFAULT_RECORD_LENGTH, null);
+    }
 
-        printer.println(HTML_STYLE);
-        printer.println("<div>");
-        for (int i = 0; i < compiledLines.size(); i++)
-        {
-            CompiledLine currentCompiledLine = compiledLines.get(i);
-            String currentOriginalLine = originalLines.get(i).strip();
+    /**
+     * @param sRecordLength data bytes per S1 record in both S-record formats.
+     * @param sRecordHeader text of the S0 record the S-record formats start with, or null to leave it out.
+     */
+    public Printer(String rawFilename, int sRecordLength, String sRecordHeader)
+    {
+        SRecordEncoder.checkRecordLength(sRecordLength);
+        this.rawFilename = rawFilename;
+        this.sRecordLength = sRecordLength;
+        this.sRecordHeader = sRecordHeader;
+    }
 
-            printer.println(
-                    "<p>" + i + " : " + currentCompiledLine
-                            .getColoredSpacedRepresentation() + " : " + currentOriginalLine + "</p>");
-        }
-        printer.println("</div>");
+    public void printErrorToList(String errorMessage)
+    {
+        PrintWriter printer = createOutputFile(rawFilename + OutputFormat.LIST.getSuffix());
+        printer.println(errorMessage);
         printer.close();
     }
 
-    public void printObjectCode(List<CompiledLine> compiledLines)
+    /**
+     * Writes every requested format in a single walk over the compiled lines followed by a single walk over the
+     * segments of the memory image.
+     */
+    public void print(Set<OutputFormat> formats, List<CompiledLine> compiledLines, List<String> originalLines,
+                      MemoryImage image)
     {
-        PrintWriter printer = createOutputFile(rawFilename + ".s19");
-        int maxLineSizeInBytes = 16;
-        Map<Integer, String> mergedRepresentation = CompiledLine.getMergedPlainRepresentation(compiledLines);
+        print(formats, compiledLines, originalLines, image, null);
+    }
+
+    /**
+     * @param stats receives the time spent in each format when it is timing formats; may be null.
+     */
+    void print(Set<OutputFormat> formats, List<CompiledLine> compiledLines, List<String> originalLines,
+               MemoryImage image, AssemblyStats stats)
+    {
+        if (compiledLines.size() != originalLines.size())
+            throw new RuntimeException("Compiled lines and original don't match");
 
-        for (Map.Entry<Integer, String> entry : mergedRepresentation.entrySet())
+        boolean timed = stats != null && stats.isTimingFormats();
+        List<OutputFormat> openFormats = new ArrayList<>(formats.size());
+        List<OutputSink> sinks = new ArrayList<>(formats.size());
+        List<OutputWrittenEvent> events = new ArrayList<>(formats.size());
+        RuntimeException failure = null;
+        try
         {
-            int startAddress = entry.getKey();
-            String binaryRepresentation = entry.getValue();
+            for (OutputFormat format : formats)
+            {
+                OutputWrittenEvent event = new OutputWrittenEvent();
+                long start = System.nanoTime();
+                OutputSink sink = createSink(format, image);
+                if (timed || event.isEnabled()) sink = new TimedSink(sink, System.nanoTime() - start);
+                openFormats.add(format);
+                sinks.add(sink);
+                events.add(event);
+            }
 
-            int address = startAddress;
-            int totalLength = binaryRepresentation.length();
-            for (int i = 0; i < totalLength; i += maxLineSizeInBytes * 2)
+            for (int i = 0; i < compiledLines.size(); i++)
             {
-                int endIndex = Math.min(totalLength, i + maxLineSizeInBytes * 2);
-                String line = binaryRepresentation.substring(i, endIndex);
-                String spacedLine = Util.addSpaceToHexString(line);
-                printer.println("<" + Integer.toHexString(address) + "> " + spacedLine);
-                address += maxLineSizeInBytes;
+                String originalLine = originalLines.get(i);
+                CompiledLine compiledLine = compiledLines.get(i);
+                for (OutputSink sink : sinks)
+                {
+                    sink.line(i, originalLine, compiledLine);
+                }
             }
-        }
 
-        printer.close();
+            for (int startAddress = image.findSegmentStart(0); startAddress != -1; )
+            {
+                int endAddress = image.findSegmentEnd(startAddress);
+                for (OutputSink sink : sinks)
+                {
+                    sink.segment(startAddress, endAddress);
+                }
+                startAddress = image.findSegmentStart(endAddress);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            // Every file opened so far is closed even when writing failed, and the first failure is the one thrown
+            for (int i = 0; i < sinks.size(); i++)
+            {
+                OutputSink sink = sinks.get(i);
+                OutputFormat format = openFormats.get(i);
+                OutputWrittenEvent event = events.get(i);
+                try
+                {
+                    event.begin();
+                    sink.close();
+                    event.end();
+                    if (sink instanceof TimedSink)
+                    {
+                        long nanos = ((TimedSink) sink).getNanos();
+                        if (timed) stats.addFormatNanos(format, nanos);
+                        event.writerTime = nanos;
+                    }
+                    if (failure == null) commit(event, format);
+                }
+                catch (RuntimeException e)
+                {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) throw failure;
     }
 
-    private String calculateChecksum(String objectCode)
+    private void commit(OutputWrittenEvent event, OutputFormat format)
     {
-        if (objectCode.length() % 2 != 0) throw new RuntimeException("Line must contain a whole number of bytes");
-        String[] splitLine = Util.addSpaceToHexString(objectCode).split(" ");
-        int totalSum = 0;
-        for (String hexByte : splitLine)
+        if (!event.shouldCommit()) return;
+        Path outputFile = Paths.get(rawFilename + format.getSuffix());
+        event.outputFile = outputFile.toString();
+        event.format = format.getKey();
+        try
+        {
+            event.size = Files.size(outputFile);
+        }
+        catch (IOException e)
         {
-            totalSum += Integer.parseInt(hexByte, 16);
+            event.size = -1;
         }
-        byte truncatedSum = (byte) ~((byte) totalSum);
-        return Util.getHexRepresentation((int) truncatedSum, 1);
+        event.commit();
     }
 
-    public void printOfficialObjectCode(List<CompiledLine> compiledLines)
+    /**
+     * File output for an in-memory assembly. A failed assembly only writes its diagnostics to the listing.
+     */
+    public void print(Set<OutputFormat> formats, AssemblyResult result)
     {
-        PrintWriter printer = createOutputFile(rawFilename + "_official.s19");
-        int maxLineSizeInBytes = 32;
-        Map<Integer, String> mergedRepresentation = CompiledLine.getMergedPlainRepresentation(compiledLines);
+        print(formats, result, null);
+    }
 
-        for (Map.Entry<Integer, String> entry : mergedRepresentation.entrySet())
+    void print(Set<OutputFormat> formats, AssemblyResult result, AssemblyStats stats)
+    {
+        if (!result.isSuccessful())
         {
-            int startAddress = entry.getKey();
-            String binaryRepresentation = entry.getValue();
-
-            int address = startAddress;
-            int totalLength = binaryRepresentation.length();
-            for (int i = 0; i < totalLength; i += maxLineSizeInBytes * 2)
+            PrintWriter printer = createOutputFile(rawFilename + OutputFormat.LIST.getSuffix());
+            for (Diagnostic diagnostic : result.getDiagnostics())
             {
-                int endIndex = Math.min(totalLength, i + maxLineSizeInBytes * 2);
-                String line = binaryRepresentation.substring(i, endIndex);
-                int lineSizeInBytes = line.length() / 2;
-
-                String formattedLine =
-                        Util.toHexString(lineSizeInBytes + 3) + Util.toHexString(address) + line;
-                printer.println("S1" + formattedLine + calculateChecksum(formattedLine));
-                address += maxLineSizeInBytes;
+                printer.println(diagnostic.getMessage());
             }
+            printer.close();
+            return;
         }
+        print(formats, result.getCompiledLines(), result.getSourceLines(), result.getImage(), stats);
+    }
 
-        printer.println("S9030000FC");
-        printer.close();
+    public void printList(List<CompiledLine> compiledLines, List<String> originalLines, MemoryImage image)
+    {
+        print(EnumSet.of(OutputFormat.LIST), compiledLines, originalLines, image);
     }
 
-    public void printColoredOfficialObjectCode(List<CompiledLine> compiledLines)
+    public void printColoredList(List<CompiledLine> compiledLines, List<String> originalLines, MemoryImage image)
     {
-        PrintWriter printer = createOutputFile(rawFilename + "_official_colored.html");
-        printer.println(HTML_STYLE);
+        print(EnumSet.of(OutputFormat.COLORED_LIST), compiledLines, originalLines, image);
+    }
 
-        int maxLineSizeInBytes = 32;
-        Map<Integer, String> mergedColoredRepresentation = CompiledLine.getMergedColoredRepresentation(compiledLines);
-        Map<Integer, String> mergedRepresentation = CompiledLine.getMergedPlainRepresentation(compiledLines);
+    public void printObjectCode(MemoryImage image)
+    {
+        print(EnumSet.of(OutputFormat.OBJECT_CODE), List.of(), List.of(), image);
+    }
 
-        for (Map.Entry<Integer, String> entry : mergedRepresentation.entrySet())
-        {
-            int startAddress = entry.getKey();
-            String binaryRepresentation = mergedRepresentation.get(startAddress);
-            String coloredRepresentation = mergedColoredRepresentation.get(startAddress);
+    public void printOfficialObjectCode(MemoryImage image)
+    {
+        print(EnumSet.of(OutputFormat.OFFICIAL_OBJECT_CODE), List.of(), List.of(), image);
+    }
 
-            int address = startAddress;
-            int totalLength = binaryRepresentation.length();
-            int startColoredIndex = 0;
-            for (int i = 0; i < totalLength; i += maxLineSizeInBytes * 2)
-            {
-                int endIndex = Math.min(totalLength, i + maxLineSizeInBytes * 2);
-                String line = binaryRepresentation.substring(i, endIndex);
-
-                int lineSizeInBytes = line.length() / 2;
-                String formattedLine =
-                        Util.toHexString(lineSizeInBytes + 3) + Util.toHexString(address) + line;
-                String checksum = calculateChecksum(formattedLine);
-
-                String prefix = "<p>S1" + Util.toHexString(lineSizeInBytes + 3) + Util.toHexString(address);
-                String suffix = checksum + "</p>";
-
-                int endColoredIndex = CompiledLine
-                        .getColoredRepresentationEnd(coloredRepresentation, startColoredIndex, lineSizeInBytes);
-                String colored = coloredRepresentation.substring(startColoredIndex, endColoredIndex);
-                startColoredIndex = endColoredIndex;
-                printer.println(prefix + colored + suffix);
-                address += maxLineSizeInBytes;
-            }
+    public void printColoredOfficialObjectCode(List<CompiledLine> compiledLines, MemoryImage image)
+    {
+        print(EnumSet.of(OutputFormat.COLORED_OFFICIAL_OBJECT_CODE), compiledLines,
+              Collections.nCopies(compiledLines.size(), ""), image);
+    }
+
+    private OutputSink createSink(OutputFormat format, MemoryImage image)
+    {
+        String filename = rawFilename + format.getSuffix();
+        switch (format)
+        {
+            case LIST:
+                return new ListingSink(createOutputFile(filename), image);
+            case COLORED_LIST:
+                return new ColoredListingSink(createOutputFile(filename), image);
+            case OBJECT_CODE:
+                return new ObjectCodeSink(createOutputFile(filename), image);
+            case OFFICIAL_OBJECT_CODE:
+                return new SRecordSink(createOutputStream(filename), image, sRecordLength, sRecordHeader);
+            case COLORED_OFFICIAL_OBJECT_CODE:
+                return new ColoredSRecordSink(createOutputFile(filename), image, sRecordLength, sRecordHeader);
+            case WCET:
+                return new WcetSink(createOutputFile(filename), image);
+            default:
+                throw new IllegalArgumentException("Unsupported output format " + format);
         }
+    }
 
-        printer.println("<p>S9030000FC</p>");
-        printer.close();
+    private OutputStream createOutputStream(String filename)
+    {
+        try
+        {
+            return new FileOutputStream(filename);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not create " + filename);
+        }
     }
 
     private PrintWriter createOutputFile(String filename)
@@ -192,4 +303,49 @@ public class Printer
             throw new RuntimeException("Could not create " + filename);
         }
     }
+
+    /**
+     * Adds up the time spent in a sink, from its creation until it is closed, for the format stats and the
+     * OutputWritten events. Only used when one of them asks for it, as it reads the clock twice for every line.
+     */
+    private static class TimedSink implements OutputSink
+    {
+        private final OutputSink sink;
+        private long nanos;
+
+        TimedSink(OutputSink sink, long creationNanos)
+        {
+            this.sink = sink;
+            this.nanos = creationNanos;
+        }
+
+        long getNanos()
+        {
+            return nanos;
+        }
+
+        @Override
+        public void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+        {
+            long start = System.nanoTime();
+            sink.line(lineNumber, originalLine, compiledLine);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void segment(int startAddress, int endAddress)
+        {
+            long start = System.nanoTime();
+            sink.segment(startAddress, endAddress);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close()
+        {
+            long start = System.nanoTime();
+            sink.close();
+            nanos += System.nanoTime() - start;
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package eypdc.assembler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Motorola S-records (S0 header, S1 data and S9 termination) straight from bytes into a reusable ASCII
+ * buffer. Hex digits come from the lookup table of {@link Hex} and each record's checksum is accumulated while its
+ * bytes are written, so no intermediate strings are created.
+ */
+public class SRecordEncoder
+{
+    public static final int DEFAULT_RECORD_LENGTH = 32;
+    // The count byte covers the address, the data and the checksum.
+    public static final int MAX_RECORD_LENGTH = 0xFF - 3;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_RECORD_CHARS = 4 + 2 * (0xFF + 1) + LINE_SEPARATOR.length;
+
+    private final OutputStream outputStream;
+    private final int recordLength;
+    private final byte[] buffer = new byte[64 * MAX_RECORD_CHARS];
+    private int position = 0;
+    private int checksum;
+
+    public SRecordEncoder(OutputStream outputStream)
+    {
+        this(outputStream, DEFAULT_RECORD_LENGTH);
+    }
+
+    public SRecordEncoder(OutputStream outputStream, int recordLength)
+    {
+        checkRecordLength(recordLength);
+        this.outputStream = outputStream;
+        this.recordLength = recordLength;
+    }
+
+    public static void checkRecordLength(int recordLength)
+    {
+        if (recordLength < 1 || recordLength > MAX_RECORD_LENGTH)
+            throw new IllegalArgumentException("Record length must be between 1 and " + MAX_RECORD_LENGTH);
+    }
+
+    /**
+     * Computes the checksum of an S1 record holding {@code length} bytes of the image starting at {@code address}.
+     */
+    public static int checksum(MemoryImage image, int address, int length)
+    {
+        int sum = (length + 3) + (address >>> 8) + (address & 0xFF);
+        for (int i = 0; i < length; i++)
+        {
+            sum += image.read(address + i);
+        }
+        return ~sum & 0xFF;
+    }
+
+    public void writeHeader(String header) throws IOException
+    {
+        byte[] data = header.getBytes(StandardCharsets.US_ASCII);
+        if (data.length > MAX_RECORD_LENGTH) throw new IllegalArgumentException("S0 header is too long");
+
+        beginRecord('0', data.length, 0);
+        for (byte value : data)
+        {
+            putByte(value & 0xFF);
+        }
+        endRecord();
+    }
+
+    /**
+     * Writes every contiguous segment of the image as S1 records.
+     */
+    public void writeImage(MemoryImage image) throws IOException
+    {
+        for (int startAddress = image.findSegmentStart(0); startAddress != -1; )
+        {
+            int endAddress = image.findSegmentEnd(startAddress);
+            writeData(image, startAddress, endAddress - startAddress);
+            startAddress = image.findSegmentStart(endAddress);
+        }
+    }
+
+    public void writeData(MemoryImage image, int address, int length) throws IOException
+    {
+        int endAddress = address + length;
+        while (address < endAddress)
+        {
+            int dataLength = Math.min(recordLength, endAddress - address);
+            beginRecord('1', dataLength, address);
+            for (int i = 0; i < dataLength; i++)
+            {
+                putByte(image.read(address + i));
+            }
+            endRecord();
+            address += dataLength;
+        }
+    }
+
+    public void writeTermination(int startAddress) throws IOException
+    {
+        beginRecord('9', 0, startAddress);
+        endRecord();
+    }
+
+    public void flush() throws IOException
+    {
+        outputStream.write(buffer, 0, position);
+        position = 0;
+        outputStream.flush();
+    }
+
+    private void beginRecord(char type, int dataLength, int address) throws IOException
+    {
+        if (position + MAX_RECORD_CHARS > buffer.length)
+        {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = 'S';
+        buffer[position++] = (byte) type;
+        checksum = 0;
+        putByte(dataLength + 3);
+        putByte(address >>> 8);
+        putByte(address & 0xFF);
+    }
+
+    private void putByte(int value)
+    {
+        position = Hex.putByte(buffer, position, value);
+        checksum += value;
+    }
+
+    private void endRecord()
+    {
+        int value = ~checksum & 0xFF;
+        position = Hex.putByte(buffer, position, value);
+        System.arraycopy(LINE_SEPARATOR, 0, buffer, position, LINE_SEPARATOR.length);
+        position += LINE_SEPARATOR.length;
+    }
+}
@@ -0,0 +1,95 @@
+package eypdc.assembler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reads what the assembler wrote back into a {@link MemoryImage}: either the S1 records of a Motorola S-record file
+ * (the _official.s19 output), whose checksums are verified while S0 headers, S5 counts and S9 terminations are
+ * skipped, or the object code lines of the plain .s19 output, "&lt;address&gt; byte byte ...".
+ */
+public class SRecordReader
+{
+    public static MemoryImage read(Path path)
+    {
+        try
+        {
+            return parse(Files.readAllLines(path));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not read " + path, e);
+        }
+    }
+
+    public static MemoryImage parse(List<String> lines)
+    {
+        MemoryImage image = new MemoryImage();
+        for (int i = 0; i < lines.size(); i++)
+        {
+            String line = lines.get(i).strip();
+            if (line.isEmpty()) continue;
+            if (line.charAt(0) == '<')
+            {
+                parseObjectCode(line, i, image);
+                continue;
+            }
+            if (line.length() < 4 || line.charAt(0) != 'S' || (line.length() & 1) != 0)
+                throw badRecord(i);
+            int count = parseByte(line, 2, i);
+            if (line.length() != 4 + 2 * count || count < 3) throw badRecord(i);
+
+            int sum = count;
+            for (int position = 4; position < line.length(); position += 2)
+            {
+                sum += parseByte(line, position, i);
+            }
+            if ((sum & 0xFF) != 0xFF) throw badRecord(i);
+
+            if (line.charAt(1) != '1') continue;
+            int address = parseByte(line, 4, i) << 8 | parseByte(line, 6, i);
+            for (int position = 8; position < line.length() - 2; position += 2)
+            {
+                image.write(address++ & (MemoryImage.SIZE - 1), parseByte(line, position, i));
+            }
+        }
+        return image;
+    }
+
+    private static void parseObjectCode(String line, int lineIndex, MemoryImage image)
+    {
+        int end = line.indexOf('>');
+        if (end < 2) throw badRecord(lineIndex);
+        int address;
+        try
+        {
+            address = Integer.parseInt(line, 1, end, 16);
+        }
+        catch (NumberFormatException e)
+        {
+            throw badRecord(lineIndex);
+        }
+        String[] bytes = line.substring(end + 1).strip().split("\\s+");
+        for (String text : bytes)
+        {
+            if (text.length() != 2) throw badRecord(lineIndex);
+            image.write(address++ & (MemoryImage.SIZE - 1), parseByte(text, 0, lineIndex));
+        }
+    }
+
+    private static int parseByte(String line, int position, int lineIndex)
+    {
+        int high = Character.digit(line.charAt(position), 16);
+        int low = Character.digit(line.charAt(position + 1), 16);
+        if (high < 0 || low < 0) throw badRecord(lineIndex);
+        return high << 4 | low;
+    }
+
+    private static IllegalArgumentException badRecord(int lineIndex)
+    {
+        return new IllegalArgumentException("Bad S-record at line " + (lineIndex + 1));
+    }
+}
@@ -0,0 +1,57 @@
+package eypdc.assembler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+class SRecordSink implements OutputSink
+{
+    private final OutputStream outputStream;
+    private final MemoryImage image;
+    private final SRecordEncoder encoder;
+
+    /**
+     * @param header text of the S0 record to start with, or null for none.
+     */
+    SRecordSink(OutputStream outputStream, MemoryImage image, int recordLength, String header)
+    {
+        this.outputStream = outputStream;
+        this.image = image;
+        this.encoder = new SRecordEncoder(outputStream, recordLength);
+        if (header == null) return;
+        try
+        {
+            encoder.writeHeader(header);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write S-records", e);
+        }
+    }
+
+    @Override
+    public void segment(int startAddress, int endAddress)
+    {
+        try
+        {
+            encoder.writeData(image, startAddress, endAddress - startAddress);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write S-records", e);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try (outputStream)
+        {
+            encoder.writeTermination(0);
+            encoder.flush();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write S-records", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package eypdc.assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eypdc.assembler.SecondPass")
+@Label("Second Pass")
+@Category("68HC11 Assembler")
+@Description("Resolving the label references of a program")
+@StackTrace(false)
+class SecondPassEvent extends jdk.jfr.Event
+{
+    @Label("Source File")
+    @Description("Null for programs assembled in memory")
+    String sourceFile;
+
+    @Label("Line Count")
+    int lineCount;
+
+    @Label("Label References")
+    int labelReferences;
+
+    @Label("Image Size")
+    @DataAmount
+    int imageSize;
+}
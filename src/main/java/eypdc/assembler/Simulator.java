@@ -0,0 +1,1174 @@
+package eypdc.assembler;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Headless 68HC11 core for timing assembled programs without hardware. Instructions are decoded through tables built
+ * once from the opcodes and cycle counts of the {@link InstructionSet}, indexed by prefix page (none, $18, $1A or $CD)
+ * and opcode byte, and the cycles of every executed instruction are added to a histogram indexed by its address. A
+ * step allocates nothing.
+ * <p>
+ * Memory is a flat 64 KB of RAM loaded from a {@link MemoryImage}; any address range can be handed to an
+ * {@link IoDevice} stub instead. Interrupts are not modelled: SWI and RTI work through the stack and vectors as on
+ * the chip, WAI halts the run, and so do STOP (unless the S bit disables it), illegal opcodes and branches or jumps
+ * to themselves, which could only be left through an interrupt. An instance is not thread-safe.
+ */
+public class Simulator
+{
+    public enum Status
+    {
+        RUNNING,
+        // STOP with the S bit clear
+        STOPPED,
+        // WAI, which waits for an interrupt
+        WAITING,
+        // A branch or jump to itself
+        IDLE_LOOP,
+        // The subroutine started by call() returned
+        RETURNED,
+        CYCLE_LIMIT,
+        ILLEGAL_OPCODE
+    }
+
+    static final int CARRY = 0x01;
+    static final int OVERFLOW = 0x02;
+    static final int ZERO = 0x04;
+    static final int NEGATIVE = 0x08;
+    static final int INTERRUPT_MASK = 0x10;
+    static final int HALF_CARRY = 0x20;
+    static final int X_INTERRUPT_MASK = 0x40;
+    static final int STOP_DISABLE = 0x80;
+
+    public static final int SWI_VECTOR = 0xFFF6;
+    public static final int RESET_VECTOR = 0xFFFE;
+
+    private static final int SIZE = MemoryImage.SIZE;
+
+    // Addressing of a decoded opcode
+    private static final byte IMMEDIATE_8 = 0;
+    private static final byte IMMEDIATE_16 = 1;
+    private static final byte DIRECT = 2;
+    private static final byte INDEXED_X = 3;
+    private static final byte INDEXED_Y = 4;
+    private static final byte EXTENDED = 5;
+    private static final byte INHERENT = 6;
+    private static final byte RELATIVE = 7;
+
+    // Decode page of each prefix byte; 0 for the bytes that are opcodes themselves
+    private static final int[] PREFIX_PAGES = new int[256];
+
+    static
+    {
+        PREFIX_PAGES[0x18] = 1;
+        PREFIX_PAGES[0x1A] = 2;
+        PREFIX_PAGES[0xCD] = 3;
+    }
+
+    /**
+     * What an opcode does, one constant per mnemonic of the instruction set. Aliases such as LSL and ASL, or BHS and
+     * BCC, share their opcodes and therefore their constant.
+     */
+    private enum Operation
+    {
+        ABA, ABX, ABY, ADCA, ADCB, ADDA, ADDB, ADDD, ANDA, ANDB, ASL, ASLA, ASLB, ASLD, ASR, ASRA, ASRB, BCC,
+        BCLR, BCS, BEQ, BGE, BGT, BHI, BITA, BITB, BLE, BLS, BLT, BMI, BNE, BPL, BRA, BRCLR, BRN, BRSET, BSET, BSR,
+        BVC, BVS, CBA, CLC, CLI, CLR, CLRA, CLRB, CLV, CMPA, CMPB, COM, COMA, COMB, CPD, CPX, CPY,
+        DAA, DEC, DECA, DECB, DES, DEX, DEY, EORA, EORB, FDIV, IDIV, INC, INCA, INCB, INS, INX, INY, JMP, JSR, LDAA,
+        LDAB, LDD, LDS, LDX, LDY, LSR, LSRA, LSRB, LSRD, MUL, NEG, NEGA, NEGB, NOP, ORAA, ORAB,
+        PSHA, PSHB, PSHX, PSHY, PULA, PULB, PULX, PULY, ROL, ROLA, ROLB, ROR, RORA, RORB, RTI, RTS, SBA, SBCA, SBCB,
+        SEC, SEI, SEV, STAA, STAB, STD, STOP, STS, STX, STY, SUBA, SUBB, SUBD, SWI, TAB, TAP, TBA, TEST, TPA, TST,
+        TSTA, TSTB, TSX, TSY, TXS, TYS, WAI, XGDX, XGDY;
+
+        private static final Map<String, Operation> ALIASES = Map.of("LSL", ASL, "LSLA", ASLA, "LSLB", ASLB,
+                                                                     "LSLD", ASLD, "BHS", BCC, "BLO", BCS,
+                                                                     "TETS", TEST);
+
+        static Operation of(String mnemonic)
+        {
+            String name = mnemonic.toUpperCase();
+            Operation alias = ALIASES.get(name);
+            return alias != null ? alias : valueOf(name);
+        }
+    }
+
+    private final Operation[] operations = new Operation[4 * 256];
+    private final byte[] addressings = new byte[4 * 256];
+    private final byte[] cycleCounts = new byte[4 * 256];
+
+    private final byte[] memory = new byte[SIZE];
+    // Index + 1 into devices of the device mapped at each address, 0 for memory
+    private final byte[] deviceIndexes = new byte[SIZE];
+    private IoDevice[] devices = new IoDevice[0];
+
+    private final long[] cyclesByAddress = new long[SIZE];
+    private final long[] executionsByAddress = new long[SIZE];
+    private long cycles = 0;
+    private long instructions = 0;
+
+    private int a;
+    private int b;
+    private int x;
+    private int y;
+    private int sp;
+    private int pc;
+    private int ccr;
+    private Status status = Status.RUNNING;
+
+    // Stack pointer and return address of the subroutine started by call(), or -1
+    private int callStackPointer = -1;
+    private int callReturnAddress = -1;
+
+    public Simulator()
+    {
+        this(InstructionSet.getInstance());
+    }
+
+    public Simulator(InstructionSet instructionSet)
+    {
+        for (int id = 0; id < instructionSet.getMnemonicCount(); id++)
+        {
+            Operation operation = Operation.of(instructionSet.getMnemonic(id));
+            for (AddressingMode addressingMode : AddressingMode.values())
+            {
+                if (!instructionSet.supports(id, addressingMode)) continue;
+                int opcode = instructionSet.getOpcode(id, addressingMode);
+                int index = opcode & 0xFF;
+                if (instructionSet.getOpcodeSize(id, addressingMode) == 2)
+                {
+                    int page = PREFIX_PAGES[opcode >>> 8];
+                    if (page == 0) throw new IllegalStateException("Unknown opcode prefix in " + opcode);
+                    index |= page << 8;
+                }
+                byte addressing = toAddressing(addressingMode);
+                if (addressing == IMMEDIATE_8 && instructionSet.getImmediateSize(id) == 2) addressing = IMMEDIATE_16;
+                int cycles = instructionSet.getCycles(id, addressingMode);
+                if (operations[index] != null &&
+                    (operations[index] != operation || addressings[index] != addressing))
+                    throw new IllegalStateException("Opcode " + Integer.toHexString(opcode) + " is both " +
+                                                    operations[index] + " and " + operation);
+                operations[index] = operation;
+                addressings[index] = addressing;
+                cycleCounts[index] = (byte) cycles;
+            }
+        }
+        reset();
+    }
+
+    private static byte toAddressing(AddressingMode addressingMode)
+    {
+        switch (addressingMode)
+        {
+            case IMM:
+                return IMMEDIATE_8;
+            case DIR:
+                return DIRECT;
+            case IND_X:
+                return INDEXED_X;
+            case IND_Y:
+                return INDEXED_Y;
+            case EXT:
+                return EXTENDED;
+            case INH:
+                return INHERENT;
+            default:
+                return RELATIVE;
+        }
+    }
+
+    /**
+     * Copies every occupied byte of the image into memory.
+     */
+    public void load(MemoryImage image)
+    {
+        for (int start = image.findSegmentStart(0); start != -1; )
+        {
+            int end = image.findSegmentEnd(start);
+            for (int address = start; address < end; address++)
+            {
+                memory[address] = (byte) image.read(address);
+            }
+            start = image.findSegmentStart(end);
+        }
+    }
+
+    /**
+     * Hands the addresses {@code [start, end)} to {@code device}.
+     */
+    public void map(int start, int end, IoDevice device)
+    {
+        if (devices.length == 255) throw new IllegalStateException("Too many devices");
+        devices = Arrays.copyOf(devices, devices.length + 1);
+        devices[devices.length - 1] = device;
+        Arrays.fill(deviceIndexes, start, end, (byte) devices.length);
+    }
+
+    /**
+     * Loads the program counter from the reset vector and sets the S, X and I bits, as the chip does. Counters and
+     * the histogram are kept; see {@link #clearProfile()}.
+     */
+    public void reset()
+    {
+        a = 0;
+        b = 0;
+        x = 0;
+        y = 0;
+        sp = 0;
+        ccr = STOP_DISABLE | X_INTERRUPT_MASK | INTERRUPT_MASK;
+        pc = read16(RESET_VECTOR);
+        status = Status.RUNNING;
+    }
+
+    public void clearProfile()
+    {
+        Arrays.fill(cyclesByAddress, 0);
+        Arrays.fill(executionsByAddress, 0);
+        cycles = 0;
+        instructions = 0;
+    }
+
+    /**
+     * Runs until the program halts or {@code maxCycles} more cycles have gone by.
+     */
+    public Status run(long maxCycles)
+    {
+        long limit = cycles + maxCycles;
+        status = Status.RUNNING;
+        while (status == Status.RUNNING)
+        {
+            if (cycles >= limit) return status = Status.CYCLE_LIMIT;
+            step();
+        }
+        return status;
+    }
+
+    /**
+     * Calls the subroutine at {@code address} as a JSR from the current program counter would, and runs until it
+     * returns, the program halts or {@code maxCycles} more cycles have gone by.
+     */
+    public Status call(int address, long maxCycles)
+    {
+        callReturnAddress = pc;
+        push16(pc);
+        callStackPointer = sp;
+        pc = address & 0xFFFF;
+        try
+        {
+            return run(maxCycles);
+        }
+        finally
+        {
+            callStackPointer = -1;
+            callReturnAddress = -1;
+        }
+    }
+
+    /**
+     * Executes one instruction.
+     */
+    public Status step()
+    {
+        int start = pc;
+        int opcode = fetch8();
+        int page = PREFIX_PAGES[opcode];
+        if (page != 0) opcode = fetch8();
+        int index = page << 8 | opcode;
+        Operation operation = operations[index];
+        if (operation == null || operation == Operation.TEST)
+        {
+            pc = start;
+            return status = Status.ILLEGAL_OPCODE;
+        }
+
+        int address;
+        switch (addressings[index])
+        {
+            case IMMEDIATE_8:
+                address = pc;
+                pc = (pc + 1) & 0xFFFF;
+                break;
+            case IMMEDIATE_16:
+                address = pc;
+                pc = (pc + 2) & 0xFFFF;
+                break;
+            case DIRECT:
+                address = fetch8();
+                break;
+            case INDEXED_X:
+                address = (x + fetch8()) & 0xFFFF;
+                break;
+            case INDEXED_Y:
+                address = (y + fetch8()) & 0xFFFF;
+                break;
+            case EXTENDED:
+                address = fetch16();
+                break;
+            case RELATIVE:
+                int offset = (byte) fetch8();
+                address = (pc + offset) & 0xFFFF;
+                break;
+            default:
+                address = 0;
+                break;
+        }
+
+        int instructionCycles = cycleCounts[index];
+        cycles += instructionCycles;
+        instructions++;
+        cyclesByAddress[start] += instructionCycles;
+        executionsByAddress[start]++;
+
+        execute(operation, address);
+
+        if (pc == start && status == Status.RUNNING && isUnconditionalLoop(operation)) status = Status.IDLE_LOOP;
+        if (pc == callReturnAddress && sp == callStackPointer + 2 && status == Status.RUNNING)
+            status = Status.RETURNED;
+        return status;
+    }
+
+    /**
+     * A branch that jumped to itself has the same flags the next time round, so only BRSET and BRCLR, which test
+     * memory that a device may change, can ever leave the loop.
+     */
+    private static boolean isUnconditionalLoop(Operation operation)
+    {
+        return operation != Operation.BRSET && operation != Operation.BRCLR;
+    }
+
+    private void execute(Operation operation, int address)
+    {
+        int value;
+        switch (operation)
+        {
+            case ABA:
+                a = add8(a, b, 0);
+                break;
+            case ABX:
+                x = (x + b) & 0xFFFF;
+                break;
+            case ABY:
+                y = (y + b) & 0xFFFF;
+                break;
+            case ADCA:
+                a = add8(a, read(address), ccr & CARRY);
+                break;
+            case ADCB:
+                b = add8(b, read(address), ccr & CARRY);
+                break;
+            case ADDA:
+                a = add8(a, read(address), 0);
+                break;
+            case ADDB:
+                b = add8(b, read(address), 0);
+                break;
+            case ADDD:
+                setD(add16(getD(), read16(address)));
+                break;
+            case ANDA:
+                a = load8(a & read(address));
+                break;
+            case ANDB:
+                b = load8(b & read(address));
+                break;
+            case ASL:
+                write(address, shiftLeft8(read(address), 0));
+                break;
+            case ASLA:
+                a = shiftLeft8(a, 0);
+                break;
+            case ASLB:
+                b = shiftLeft8(b, 0);
+                break;
+            case ASLD:
+                value = getD() << 1;
+                setD(shifted16(value, (value & 0x10000) != 0));
+                break;
+            case ASR:
+                write(address, shiftRight8(read(address), read(address) & 0x80));
+                break;
+            case ASRA:
+                a = shiftRight8(a, a & 0x80);
+                break;
+            case ASRB:
+                b = shiftRight8(b, b & 0x80);
+                break;
+            case BCC:
+                branch((ccr & CARRY) == 0, address);
+                break;
+            case BCLR:
+                write(address, load8(read(address) & ~fetch8()));
+                break;
+            case BCS:
+                branch((ccr & CARRY) != 0, address);
+                break;
+            case BEQ:
+                branch((ccr & ZERO) != 0, address);
+                break;
+            case BGE:
+                branch(!lessThan(), address);
+                break;
+            case BGT:
+                branch(!lessThan() && (ccr & ZERO) == 0, address);
+                break;
+            case BHI:
+                branch((ccr & (CARRY | ZERO)) == 0, address);
+                break;
+            case BITA:
+                load8(a & read(address));
+                break;
+            case BITB:
+                load8(b & read(address));
+                break;
+            case BLE:
+                branch(lessThan() || (ccr & ZERO) != 0, address);
+                break;
+            case BLS:
+                branch((ccr & (CARRY | ZERO)) != 0, address);
+                break;
+            case BLT:
+                branch(lessThan(), address);
+                break;
+            case BMI:
+                branch((ccr & NEGATIVE) != 0, address);
+                break;
+            case BNE:
+                branch((ccr & ZERO) == 0, address);
+                break;
+            case BPL:
+                branch((ccr & NEGATIVE) == 0, address);
+                break;
+            case BRA:
+                pc = address;
+                break;
+            case BRCLR:
+                value = read(address) & fetch8();
+                branchTo(value == 0, (byte) fetch8());
+                break;
+            case BRN:
+                break;
+            case BRSET:
+                value = ~read(address) & fetch8();
+                branchTo(value == 0, (byte) fetch8());
+                break;
+            case BSET:
+                write(address, load8(read(address) | fetch8()));
+                break;
+            case BSR:
+                push16(pc);
+                pc = address;
+                break;
+            case BVC:
+                branch((ccr & OVERFLOW) == 0, address);
+                break;
+            case BVS:
+                branch((ccr & OVERFLOW) != 0, address);
+                break;
+            case CBA:
+                subtract8(a, b, 0);
+                break;
+            case CLC:
+                ccr &= ~CARRY;
+                break;
+            case CLI:
+                ccr &= ~INTERRUPT_MASK;
+                break;
+            case CLR:
+                write(address, clear());
+                break;
+            case CLRA:
+                a = clear();
+                break;
+            case CLRB:
+                b = clear();
+                break;
+            case CLV:
+                ccr &= ~OVERFLOW;
+                break;
+            case CMPA:
+                subtract8(a, read(address), 0);
+                break;
+            case CMPB:
+                subtract8(b, read(address), 0);
+                break;
+            case COM:
+                write(address, complement(read(address)));
+                break;
+            case COMA:
+                a = complement(a);
+                break;
+            case COMB:
+                b = complement(b);
+                break;
+            case CPD:
+                subtract16(getD(), read16(address));
+                break;
+            case CPX:
+                subtract16(x, read16(address));
+                break;
+            case CPY:
+                subtract16(y, read16(address));
+                break;
+            case DAA:
+                decimalAdjust();
+                break;
+            case DEC:
+                write(address, decrement(read(address)));
+                break;
+            case DECA:
+                a = decrement(a);
+                break;
+            case DECB:
+                b = decrement(b);
+                break;
+            case DES:
+                sp = (sp - 1) & 0xFFFF;
+                break;
+            case DEX:
+                x = setZero16((x - 1) & 0xFFFF);
+                break;
+            case DEY:
+                y = setZero16((y - 1) & 0xFFFF);
+                break;
+            case EORA:
+                a = load8(a ^ read(address));
+                break;
+            case EORB:
+                b = load8(b ^ read(address));
+                break;
+            case FDIV:
+                fractionalDivide();
+                break;
+            case IDIV:
+                integerDivide();
+                break;
+            case INC:
+                write(address, increment(read(address)));
+                break;
+            case INCA:
+                a = increment(a);
+                break;
+            case INCB:
+                b = increment(b);
+                break;
+            case INS:
+                sp = (sp + 1) & 0xFFFF;
+                break;
+            case INX:
+                x = setZero16((x + 1) & 0xFFFF);
+                break;
+            case INY:
+                y = setZero16((y + 1) & 0xFFFF);
+                break;
+            case JMP:
+                pc = address;
+                break;
+            case JSR:
+                push16(pc);
+                pc = address;
+                break;
+            case LDAA:
+                a = load8(read(address));
+                break;
+            case LDAB:
+                b = load8(read(address));
+                break;
+            case LDD:
+                setD(load16(read16(address)));
+                break;
+            case LDS:
+                sp = load16(read16(address));
+                break;
+            case LDX:
+                x = load16(read16(address));
+                break;
+            case LDY:
+                y = load16(read16(address));
+                break;
+            case LSR:
+                write(address, shiftRight8(read(address), 0));
+                break;
+            case LSRA:
+                a = shiftRight8(a, 0);
+                break;
+            case LSRB:
+                b = shiftRight8(b, 0);
+                break;
+            case LSRD:
+                value = getD();
+                setD(shifted16(value >>> 1, (value & 1) != 0));
+                break;
+            case MUL:
+                setD(a * b);
+                ccr = (b & 0x80) != 0 ? ccr | CARRY : ccr & ~CARRY;
+                break;
+            case NEG:
+                write(address, subtract8(0, read(address), 0));
+                break;
+            case NEGA:
+                a = subtract8(0, a, 0);
+                break;
+            case NEGB:
+                b = subtract8(0, b, 0);
+                break;
+            case NOP:
+                break;
+            case ORAA:
+                a = load8(a | read(address));
+                break;
+            case ORAB:
+                b = load8(b | read(address));
+                break;
+            case PSHA:
+                push8(a);
+                break;
+            case PSHB:
+                push8(b);
+                break;
+            case PSHX:
+                push16(x);
+                break;
+            case PSHY:
+                push16(y);
+                break;
+            case PULA:
+                a = pull8();
+                break;
+            case PULB:
+                b = pull8();
+                break;
+            case PULX:
+                x = pull16();
+                break;
+            case PULY:
+                y = pull16();
+                break;
+            case ROL:
+                write(address, shiftLeft8(read(address), ccr & CARRY));
+                break;
+            case ROLA:
+                a = shiftLeft8(a, ccr & CARRY);
+                break;
+            case ROLB:
+                b = shiftLeft8(b, ccr & CARRY);
+                break;
+            case ROR:
+                write(address, shiftRight8(read(address), (ccr & CARRY) << 7));
+                break;
+            case RORA:
+                a = shiftRight8(a, (ccr & CARRY) << 7);
+                break;
+            case RORB:
+                b = shiftRight8(b, (ccr & CARRY) << 7);
+                break;
+            case RTI:
+                restoreCcr(pull8());
+                b = pull8();
+                a = pull8();
+                x = pull16();
+                y = pull16();
+                pc = pull16();
+                break;
+            case RTS:
+                pc = pull16();
+                break;
+            case SBA:
+                a = subtract8(a, b, 0);
+                break;
+            case SBCA:
+                a = subtract8(a, read(address), ccr & CARRY);
+                break;
+            case SBCB:
+                b = subtract8(b, read(address), ccr & CARRY);
+                break;
+            case SEC:
+                ccr |= CARRY;
+                break;
+            case SEI:
+                ccr |= INTERRUPT_MASK;
+                break;
+            case SEV:
+                ccr |= OVERFLOW;
+                break;
+            case STAA:
+                write(address, load8(a));
+                break;
+            case STAB:
+                write(address, load8(b));
+                break;
+            case STD:
+                write16(address, load16(getD()));
+                break;
+            case STOP:
+                if ((ccr & STOP_DISABLE) == 0) status = Status.STOPPED;
+                break;
+            case STS:
+                write16(address, load16(sp));
+                break;
+            case STX:
+                write16(address, load16(x));
+                break;
+            case STY:
+                write16(address, load16(y));
+                break;
+            case SUBA:
+                a = subtract8(a, read(address), 0);
+                break;
+            case SUBB:
+                b = subtract8(b, read(address), 0);
+                break;
+            case SUBD:
+                setD(subtract16(getD(), read16(address)));
+                break;
+            case SWI:
+                pushRegisters();
+                ccr |= INTERRUPT_MASK;
+                pc = read16(SWI_VECTOR);
+                break;
+            case TAB:
+                b = load8(a);
+                break;
+            case TAP:
+                restoreCcr(a);
+                break;
+            case TBA:
+                a = load8(b);
+                break;
+            case TPA:
+                a = ccr;
+                break;
+            case TST:
+                load8(read(address));
+                ccr &= ~CARRY;
+                break;
+            case TSTA:
+                load8(a);
+                ccr &= ~CARRY;
+                break;
+            case TSTB:
+                load8(b);
+                ccr &= ~CARRY;
+                break;
+            case TSX:
+                x = (sp + 1) & 0xFFFF;
+                break;
+            case TSY:
+                y = (sp + 1) & 0xFFFF;
+                break;
+            case TXS:
+                sp = (x - 1) & 0xFFFF;
+                break;
+            case TYS:
+                sp = (y - 1) & 0xFFFF;
+                break;
+            case WAI:
+                pushRegisters();
+                status = Status.WAITING;
+                break;
+            case XGDX:
+                value = getD();
+                setD(x);
+                x = value;
+                break;
+            case XGDY:
+                value = getD();
+                setD(y);
+                y = value;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected operation " + operation);
+        }
+    }
+
+    private int fetch8()
+    {
+        int value = read(pc);
+        pc = (pc + 1) & 0xFFFF;
+        return value;
+    }
+
+    private int fetch16()
+    {
+        int value = read16(pc);
+        pc = (pc + 2) & 0xFFFF;
+        return value;
+    }
+
+    /**
+     * Reads memory or the device mapped at {@code address}, as the program would.
+     */
+    public int read(int address)
+    {
+        address &= SIZE - 1;
+        int device = deviceIndexes[address];
+        if (device == 0) return memory[address] & 0xFF;
+        return devices[device - 1].read(address) & 0xFF;
+    }
+
+    public int read16(int address)
+    {
+        return read(address) << 8 | read(address + 1);
+    }
+
+    /**
+     * Writes memory or the device mapped at {@code address}, as the program would.
+     */
+    public void write(int address, int value)
+    {
+        address &= SIZE - 1;
+        int device = deviceIndexes[address];
+        if (device == 0) memory[address] = (byte) value;
+        else devices[device - 1].write(address, value & 0xFF);
+    }
+
+    private void write16(int address, int value)
+    {
+        write(address, value >>> 8);
+        write(address + 1, value);
+    }
+
+    private void push8(int value)
+    {
+        write(sp, value);
+        sp = (sp - 1) & 0xFFFF;
+    }
+
+    private void push16(int value)
+    {
+        push8(value);
+        push8(value >>> 8);
+    }
+
+    private int pull8()
+    {
+        sp = (sp + 1) & 0xFFFF;
+        return read(sp);
+    }
+
+    private int pull16()
+    {
+        int high = pull8();
+        return high << 8 | pull8();
+    }
+
+    private void pushRegisters()
+    {
+        push16(pc);
+        push16(y);
+        push16(x);
+        push8(a);
+        push8(b);
+        push8(ccr);
+    }
+
+    /**
+     * Sets the condition codes from a pulled or transferred byte; like the chip, software can clear X but never set it.
+     */
+    private void restoreCcr(int value)
+    {
+        ccr = value & (~X_INTERRUPT_MASK | ccr) & 0xFF;
+    }
+
+    private void branch(boolean condition, int target)
+    {
+        if (condition) pc = target;
+    }
+
+    private void branchTo(boolean condition, int offset)
+    {
+        if (condition) pc = (pc + offset) & 0xFFFF;
+    }
+
+    private boolean lessThan()
+    {
+        return ((ccr & NEGATIVE) != 0) != ((ccr & OVERFLOW) != 0);
+    }
+
+    private static int negativeZero8(int value)
+    {
+        return ((value & 0x80) != 0 ? NEGATIVE : 0) | ((value & 0xFF) == 0 ? ZERO : 0);
+    }
+
+    private static int negativeZero16(int value)
+    {
+        return ((value & 0x8000) != 0 ? NEGATIVE : 0) | ((value & 0xFFFF) == 0 ? ZERO : 0);
+    }
+
+    private int add8(int left, int right, int carry)
+    {
+        int result = left + right + carry;
+        int carries = (left & right) | (right & ~result) | (~result & left);
+        int overflow = (left & right & ~result) | (~left & ~right & result);
+        ccr = ccr & ~(HALF_CARRY | NEGATIVE | ZERO | OVERFLOW | CARRY) | negativeZero8(result) |
+              ((carries & 0x08) != 0 ? HALF_CARRY : 0) | ((overflow & 0x80) != 0 ? OVERFLOW : 0) |
+              ((carries & 0x80) != 0 ? CARRY : 0);
+        return result & 0xFF;
+    }
+
+    private int subtract8(int left, int right, int borrow)
+    {
+        int result = left - right - borrow;
+        int borrows = (~left & right) | (right & result) | (result & ~left);
+        int overflow = (left & ~right & ~result) | (~left & right & result);
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW | CARRY) | negativeZero8(result) |
+              ((overflow & 0x80) != 0 ? OVERFLOW : 0) | ((borrows & 0x80) != 0 ? CARRY : 0);
+        return result & 0xFF;
+    }
+
+    private int add16(int left, int right)
+    {
+        int result = left + right;
+        int overflow = (left & right & ~result) | (~left & ~right & result);
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW | CARRY) | negativeZero16(result) |
+              ((overflow & 0x8000) != 0 ? OVERFLOW : 0) | (result > 0xFFFF ? CARRY : 0);
+        return result & 0xFFFF;
+    }
+
+    private int subtract16(int left, int right)
+    {
+        int result = left - right;
+        int overflow = (left & ~right & ~result) | (~left & right & result);
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW | CARRY) | negativeZero16(result) |
+              ((overflow & 0x8000) != 0 ? OVERFLOW : 0) | (result < 0 ? CARRY : 0);
+        return result & 0xFFFF;
+    }
+
+    /**
+     * Loads, stores and logic operations: N and Z from the value, V cleared.
+     */
+    private int load8(int value)
+    {
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW) | negativeZero8(value);
+        return value & 0xFF;
+    }
+
+    private int load16(int value)
+    {
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW) | negativeZero16(value);
+        return value & 0xFFFF;
+    }
+
+    private int setZero16(int value)
+    {
+        ccr = value == 0 ? ccr | ZERO : ccr & ~ZERO;
+        return value;
+    }
+
+    private int clear()
+    {
+        ccr = ccr & ~(NEGATIVE | OVERFLOW | CARRY) | ZERO;
+        return 0;
+    }
+
+    private int complement(int value)
+    {
+        int result = ~value & 0xFF;
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW) | negativeZero8(result) | CARRY;
+        return result;
+    }
+
+    private int increment(int value)
+    {
+        int result = (value + 1) & 0xFF;
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW) | negativeZero8(result) | (value == 0x7F ? OVERFLOW : 0);
+        return result;
+    }
+
+    private int decrement(int value)
+    {
+        int result = (value - 1) & 0xFF;
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW) | negativeZero8(result) | (value == 0x80 ? OVERFLOW : 0);
+        return result;
+    }
+
+    /**
+     * Shifts and rotates: C is the bit shifted out and V is N exclusive-or C.
+     */
+    private int shifted8(int result, boolean carry)
+    {
+        int flags = negativeZero8(result) | (carry ? CARRY : 0);
+        if (((flags & NEGATIVE) != 0) != carry) flags |= OVERFLOW;
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW | CARRY) | flags;
+        return result & 0xFF;
+    }
+
+    private int shifted16(int result, boolean carry)
+    {
+        int flags = negativeZero16(result) | (carry ? CARRY : 0);
+        if (((flags & NEGATIVE) != 0) != carry) flags |= OVERFLOW;
+        ccr = ccr & ~(NEGATIVE | ZERO | OVERFLOW | CARRY) | flags;
+        return result & 0xFFFF;
+    }
+
+    private int shiftLeft8(int value, int lowBit)
+    {
+        return shifted8(value << 1 | lowBit, (value & 0x80) != 0);
+    }
+
+    private int shiftRight8(int value, int highBit)
+    {
+        return shifted8(value >>> 1 | highBit, (value & 1) != 0);
+    }
+
+    private void decimalAdjust()
+    {
+        int correction = 0;
+        boolean carry = (ccr & CARRY) != 0;
+        if ((ccr & HALF_CARRY) != 0 || (a & 0x0F) > 9) correction |= 0x06;
+        if (carry || a > 0x99 || (a > 0x8F && (a & 0x0F) > 9)) correction |= 0x60;
+        int result = a + correction;
+        ccr = ccr & ~(NEGATIVE | ZERO | CARRY) | negativeZero8(result) |
+              (carry || (correction & 0x60) != 0 ? CARRY : 0);
+        a = result & 0xFF;
+    }
+
+    private void integerDivide()
+    {
+        int dividend = getD();
+        ccr &= ~(ZERO | OVERFLOW | CARRY);
+        if (x == 0)
+        {
+            x = 0xFFFF;
+            ccr |= CARRY;
+            return;
+        }
+        int quotient = dividend / x;
+        setD(dividend % x);
+        x = quotient;
+        if (quotient == 0) ccr |= ZERO;
+    }
+
+    private void fractionalDivide()
+    {
+        int dividend = getD();
+        ccr &= ~(ZERO | OVERFLOW | CARRY);
+        if (x == 0)
+        {
+            x = 0xFFFF;
+            ccr |= CARRY;
+            return;
+        }
+        if (x <= dividend)
+        {
+            x = 0xFFFF;
+            ccr |= OVERFLOW;
+            return;
+        }
+        long scaled = (long) dividend << 16;
+        int quotient = (int) (scaled / x);
+        setD((int) (scaled % x));
+        x = quotient;
+        if (quotient == 0) ccr |= ZERO;
+    }
+
+    private int getD()
+    {
+        return a << 8 | b;
+    }
+
+    private void setD(int value)
+    {
+        a = (value >>> 8) & 0xFF;
+        b = value & 0xFF;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public long getCycles()
+    {
+        return cycles;
+    }
+
+    public long getInstructions()
+    {
+        return instructions;
+    }
+
+    /**
+     * @return the cycles spent in the instructions that start at {@code address}.
+     */
+    public long getCyclesAt(int address)
+    {
+        return cyclesByAddress[address & (SIZE - 1)];
+    }
+
+    /**
+     * @return how many times the instruction at {@code address} was executed.
+     */
+    public long getExecutionsAt(int address)
+    {
+        return executionsByAddress[address & (SIZE - 1)];
+    }
+
+    public int getA()
+    {
+        return a;
+    }
+
+    public void setA(int a)
+    {
+        this.a = a & 0xFF;
+    }
+
+    public int getB()
+    {
+        return b;
+    }
+
+    public void setB(int b)
+    {
+        this.b = b & 0xFF;
+    }
+
+    public int getX()
+    {
+        return x;
+    }
+
+    public void setX(int x)
+    {
+        this.x = x & 0xFFFF;
+    }
+
+    public int getY()
+    {
+        return y;
+    }
+
+    public void setY(int y)
+    {
+        this.y = y & 0xFFFF;
+    }
+
+    public int getSp()
+    {
+        return sp;
+    }
+
+    public void setSp(int sp)
+    {
+        this.sp = sp & 0xFFFF;
+    }
+
+    public int getPc()
+    {
+        return pc;
+    }
+
+    public void setPc(int pc)
+    {
+        this.pc = pc & 0xFFFF;
+    }
+
+    public int getCcr()
+    {
+        return ccr;
+    }
+
+    public void setCcr(int ccr)
+    {
+        this.ccr = ccr & 0xFF;
+    }
+}
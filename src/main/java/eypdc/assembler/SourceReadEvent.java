@@ -0,0 +1,21 @@
+package eypdc.assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eypdc.assembler.SourceRead")
+@Label("Source Read")
+@Category("68HC11 Assembler")
+@Description("A source file read into lines")
+@StackTrace(false)
+class SourceReadEvent extends jdk.jfr.Event
+{
+    @Label("Source File")
+    String sourceFile;
+
+    @Label("Line Count")
+    int lineCount;
+}
@@ -0,0 +1,42 @@
+package eypdc.assembler;
+
+import lombok.Data;
+
+/**
+ * What a single non-blank source line says, independently of where it ends up in memory. The first pass lays
+ * statements out one after the other; the incremental assembler keeps them between runs.
+ */
+@Data
+class Statement
+{
+    enum Kind
+    {
+        BLANK,
+        // RESET on its own line
+        RESET,
+        EQU,
+        LABEL,
+        ORG,
+        END,
+        // Instruction or FCB
+        CODE
+    }
+
+    static final int NO_SYMBOL = -1;
+
+    private Kind kind;
+    // Symbol table id of the constant or label name
+    private int symbol;
+    // EQU or ORG operand
+    private int value;
+    // Encoded line without an address, only for CODE
+    private CompiledLine compiledLine;
+
+    void set(Kind kind, int symbol, int value, CompiledLine compiledLine)
+    {
+        this.kind = kind;
+        this.symbol = symbol;
+        this.value = value;
+        this.compiledLine = compiledLine;
+    }
+}
@@ -0,0 +1,196 @@
+package eypdc.assembler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Labels and EQU constants of a program. Every name is interned once into a dense id, hashing case-insensitively
+ * straight on the characters of the source line, so looking a symbol up allocates nothing. Values are kept per id in
+ * primitive arrays. A name can be a constant and a label at the same time, as constants and labels are separate
+ * namespaces; EQU values serve both as immediate constants and as addresses ("variables").
+ */
+class SymbolTable
+{
+    static final byte CONSTANT = 1;
+    static final byte LABEL = 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Open addressing with linear probing; each slot holds id + 1, or 0 when free. Never more than half full.
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    private int size = 0;
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] constantValues = new int[INITIAL_CAPACITY];
+    private int[] labelValues = new int[INITIAL_CAPACITY];
+    // Source line of each label, so branch relaxation can move it with the code around it
+    private int[] labelLines = new int[INITIAL_CAPACITY];
+
+    private static int hash(CharSequence text, int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + Character.toUpperCase(text.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean matches(int id, CharSequence text, int start, int end)
+    {
+        String name = names[id];
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++)
+        {
+            if (name.charAt(i) != Character.toUpperCase(text.charAt(start + i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the id of {@code text[start, end)}, adding it, upper case, if it is new.
+     */
+    int intern(CharSequence text, int start, int end)
+    {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask)
+        {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(id, text, start, end)) return id;
+        }
+
+        if (size == names.length)
+        {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            constantValues = Arrays.copyOf(constantValues, capacity);
+            labelValues = Arrays.copyOf(labelValues, capacity);
+            labelLines = Arrays.copyOf(labelLines, capacity);
+        }
+        int id = size++;
+        names[id] = toUpperCase(text, start, end);
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) rehash();
+        return id;
+    }
+
+    private static String toUpperCase(CharSequence text, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (Character.toUpperCase(text.charAt(i)) != text.charAt(i))
+            {
+                char[] name = new char[end - start];
+                for (int j = 0; j < name.length; j++)
+                {
+                    name[j] = Character.toUpperCase(text.charAt(start + j));
+                }
+                return new String(name);
+            }
+        }
+        // Already upper case, so the range of the source line is copied as it is. This allocates a String, but only
+        // for a new symbol; looking up a known one allocates nothing
+        return text.subSequence(start, end).toString();
+    }
+
+    int intern(String name)
+    {
+        return intern(name, 0, name.length());
+    }
+
+    private void rehash()
+    {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++)
+        {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Forgets every value but keeps the interned names, so their ids stay valid.
+     */
+    void clearValues()
+    {
+        Arrays.fill(kinds, 0, size, (byte) 0);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    String getName(int id)
+    {
+        return names[id];
+    }
+
+    boolean isConstant(int id)
+    {
+        return (kinds[id] & CONSTANT) != 0;
+    }
+
+    int getConstant(int id)
+    {
+        return constantValues[id];
+    }
+
+    void defineConstant(int id, int value)
+    {
+        kinds[id] |= CONSTANT;
+        constantValues[id] = value;
+    }
+
+    boolean isLabel(int id)
+    {
+        return (kinds[id] & LABEL) != 0;
+    }
+
+    int getLabel(int id)
+    {
+        return labelValues[id];
+    }
+
+    int getLabelLine(int id)
+    {
+        return labelLines[id];
+    }
+
+    void defineLabel(int id, int address, int line)
+    {
+        kinds[id] |= LABEL;
+        labelValues[id] = address;
+        labelLines[id] = line;
+    }
+
+    void setLabel(int id, int address)
+    {
+        labelValues[id] = address;
+    }
+
+    Map<String, Integer> toMap(byte kind)
+    {
+        int count = 0;
+        for (int id = 0; id < size; id++)
+        {
+            if ((kinds[id] & kind) != 0) count++;
+        }
+        Map<String, Integer> map = new HashMap<>(count * 4 / 3 + 1);
+        for (int id = 0; id < size; id++)
+        {
+            if ((kinds[id] & kind) != 0) map.put(names[id], kind == CONSTANT ? constantValues[id] : labelValues[id]);
+        }
+        return map;
+    }
+}
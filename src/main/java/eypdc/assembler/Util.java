@@ -5,9 +5,8 @@ public class Util
     public static String toHexString(Integer value)
     {
         if (value < 0) throw new RuntimeException("Negative values are not supported");
-        int hexDigits = Integer.toHexString(value).length();
-        int sizeInBytes = hexDigits % 2 == 0 ? hexDigits / 2 : hexDigits / 2 + 1;
-        return String.format("%0" + (sizeInBytes * 2) + "x", value).toUpperCase();
+        int sizeInBytes = (Hex.getDigitCount(value) + 1) / 2;
+        return Hex.append(new StringBuilder(sizeInBytes * 2), value, sizeInBytes).toString();
     }
 
     public static int getMaxValueFromBytes(int sizeInBytes)
@@ -15,28 +14,37 @@ public class Util
         return getMaxValueFromBits(8 * sizeInBytes);
     }
 
+    /**
+     * @return 2^sizeInBits - 1, saturated to {@link Integer#MAX_VALUE}.
+     */
     public static int getMaxValueFromBits(int sizeInBits)
     {
-        return (int) (Math.pow(2, sizeInBits) - 1);
+        if (sizeInBits <= 0) return 0;
+        if (sizeInBits >= Integer.SIZE - 1) return Integer.MAX_VALUE;
+        return (1 << sizeInBits) - 1;
     }
 
     public static String getHexRepresentation(Integer value, int sizeInBytes)
+    {
+        return appendHexRepresentation(new StringBuilder(sizeInBytes * 2), value, sizeInBytes).toString();
+    }
+
+    /**
+     * Appends {@code value} in {@code sizeInBytes} bytes, negative values in two's complement.
+     */
+    public static StringBuilder appendHexRepresentation(StringBuilder builder, int value, int sizeInBytes)
     {
         if (value >= 0)
         {
             if (value > getMaxValueFromBytes(sizeInBytes)) throw new RuntimeException("Value does not fit size");
-            return String.format("%0" + (sizeInBytes * 2) + "x", value).toUpperCase();
         }
-
-        // Value is negative, use two's complement
-        int maxNegativeValue = getMaxValueFromBits(sizeInBytes * 8 - 1);
-        if (value > maxNegativeValue || value < (-maxNegativeValue - 1))
-            throw new RuntimeException("Value does not fit size");
-        String binaryRepresentation = Integer.toBinaryString(value);
-        int length = binaryRepresentation.length();
-        String trimmed = binaryRepresentation.substring(length - 8 * sizeInBytes);
-        int unsignedValue = Integer.parseUnsignedInt(trimmed, 2);
-        return Integer.toHexString(unsignedValue).toUpperCase();
+        else
+        {
+            int maxNegativeValue = getMaxValueFromBits(sizeInBytes * 8 - 1);
+            if (value > maxNegativeValue || value < (-maxNegativeValue - 1))
+                throw new RuntimeException("Value does not fit size");
+        }
+        return Hex.append(builder, value, sizeInBytes);
     }
 
     public static String addSpaceToHexString(String hexString)
@@ -0,0 +1,870 @@
+package eypdc.assembler;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Static worst-case execution time, in bus cycles, of every subroutine of an assembled program. The control-flow graph
+ * has one node per instruction, with edges decoded from the bytes the second pass wrote: the fall-through, the target
+ * of relative branches, BRSET and BRCLR (of their JMP when relaxed over one), and the target of direct JMPs. A direct
+ * JSR or BSR costs its own cycles plus the worst case of the subroutine it calls, and RTS and RTI return.
+ * <p>
+ * Loops are found with one depth-first search and a union-find over the back edges (Tarjan's interval finding), so
+ * the analysis takes time linear in the program size for a given loop nesting depth. A loop only has a bound when a
+ * comment on its first instruction, on its label or on the branch that closes it says how many times at most the loop
+ * is entered per run, for example {@code BNE SUMA * @bound 16}. Its cost is then {@code bound - 1} times its most
+ * expensive iteration plus its most expensive way out. Loops without a bound, indirect jumps and calls, recursion and
+ * jumps into the middle of a loop make a subroutine unbounded, and the report names the line responsible. Branches
+ * take the same cycles whether they are taken or not, and interrupts are not accounted for.
+ */
+public class WcetAnalysis
+{
+    /**
+     * No path reaches a return.
+     */
+    public static final long NEVER_RETURNS = -1;
+    /**
+     * Values from here up are unbounded; the difference is the index of the cause.
+     */
+    private static final long UNBOUNDED = Long.MAX_VALUE - Integer.MAX_VALUE;
+    private static final String BOUND_ANNOTATION = "@bound";
+
+    // How control leaves an instruction
+    private static final byte NEXT = 0;
+    private static final byte BRANCH = 1;
+    private static final byte ALWAYS = 2;
+    private static final byte JUMP = 3;
+    private static final byte CALL = 4;
+    private static final byte RETURN = 5;
+
+    private static final byte WHITE = 0;
+    private static final byte GRAY = 1;
+    private static final byte BLACK = 2;
+
+    private final List<String> causes = new ArrayList<>();
+
+    // One node per instruction, in source order
+    private final int count;
+    private final int[] lines;
+    private final int[] addresses;
+    private final int[] cycles;
+    private final byte[] flows;
+    private final String[] labels;
+    private final int[] bounds;
+    private final int[] successors1;
+    private final int[] successors2;
+    private final int[] callees;
+    // 0, or the unbounded cost of a target outside the code
+    private final long[] penalties;
+    private final int[] nodeAt = new int[MemoryImage.SIZE];
+
+    // Loop forest: innermost loop header containing each node (a header's own entry is its parent loop), or -1
+    private final int[] loopParents;
+    private final boolean[] headers;
+    private final boolean[] irreducible;
+    private final int[] loopBounds;
+    private final int[] tops;
+    private final int[] reversePostorder;
+    private final LoopSummary[] summaries;
+
+    // Worst case from each unit (a node outside every loop or an outermost loop header) to a return
+    private final long[] worstCases;
+    private final byte[] states;
+    private final long[] arrivals;
+    private int postorderCount = 0;
+
+    private final List<Subroutine> subroutines = new ArrayList<>();
+    private final List<Loop> loops = new ArrayList<>();
+
+    @Data
+    public static class Subroutine
+    {
+        private final String name;
+        private final int address;
+        // 1-based, as in compile errors
+        private final int line;
+        private final long cycles;
+        // Null unless the subroutine is unbounded
+        private final String reason;
+
+        public boolean isBounded()
+        {
+            return reason == null && cycles != NEVER_RETURNS;
+        }
+    }
+
+    @Data
+    public static class Loop
+    {
+        private final String name;
+        private final int address;
+        private final int line;
+        // 0 without a @bound annotation
+        private final int bound;
+        private final long iterationCycles;
+    }
+
+    /**
+     * Most expensive paths through one loop, from its header: back to the header, to a return, and out of the loop.
+     */
+    private static class LoopSummary
+    {
+        private long iteration = NEVER_RETURNS;
+        private long toReturn = NEVER_RETURNS;
+        private long[] exitCosts = new long[4];
+        private int[] exitTargets = new int[4];
+        private int exitCount = 0;
+
+        private void addExit(long cost, int target)
+        {
+            if (exitCount == exitTargets.length)
+            {
+                exitCosts = Arrays.copyOf(exitCosts, exitCount * 2);
+                exitTargets = Arrays.copyOf(exitTargets, exitCount * 2);
+            }
+            exitCosts[exitCount] = cost;
+            exitTargets[exitCount++] = target;
+        }
+    }
+
+    public WcetAnalysis(AssemblyResult result)
+    {
+        this(result.getCompiledLines(), result.getSourceLines(), result.getImage(), InstructionSet.getInstance());
+    }
+
+    WcetAnalysis(List<CompiledLine> compiledLines, List<String> sourceLines, MemoryImage image,
+                 InstructionSet instructionSet)
+    {
+        causes.add("the cycle count overflows");
+
+        int instructions = 0;
+        for (CompiledLine compiledLine : compiledLines)
+        {
+            if (isInstruction(compiledLine)) instructions++;
+        }
+        count = instructions;
+        lines = new int[count];
+        addresses = new int[count];
+        cycles = new int[count];
+        flows = new byte[count];
+        labels = new String[count];
+        bounds = new int[count];
+        successors1 = new int[count];
+        successors2 = new int[count];
+        callees = new int[count];
+        penalties = new long[count];
+        loopParents = new int[count];
+        headers = new boolean[count];
+        irreducible = new boolean[count];
+        loopBounds = new int[count];
+        tops = new int[count];
+        reversePostorder = new int[count];
+        summaries = new LoopSummary[count];
+        worstCases = new long[count];
+        states = new byte[count];
+        arrivals = new long[count];
+
+        readInstructions(compiledLines, sourceLines, image, new Flows(instructionSet));
+        findLoops();
+        computeWorstCases();
+        collectResults();
+    }
+
+    private static boolean isInstruction(CompiledLine compiledLine)
+    {
+        return !compiledLine.isEmpty() && compiledLine.getAddressingMode() != null;
+    }
+
+    /**
+     * Opcodes that change the flow of control, by kind.
+     */
+    private static class Flows
+    {
+        private final int[] opcodes;
+        private final byte[] kinds;
+        private final int bitBranchCount;
+
+        private Flows(InstructionSet instructionSet)
+        {
+            List<Integer> opcodeList = new ArrayList<>();
+            List<Byte> kindList = new ArrayList<>();
+            add(instructionSet, "brset", BRANCH, opcodeList, kindList);
+            add(instructionSet, "brclr", BRANCH, opcodeList, kindList);
+            bitBranchCount = opcodeList.size();
+            add(instructionSet, "bra", ALWAYS, opcodeList, kindList);
+            add(instructionSet, "brn", NEXT, opcodeList, kindList);
+            add(instructionSet, "jmp", JUMP, opcodeList, kindList);
+            add(instructionSet, "jsr", CALL, opcodeList, kindList);
+            add(instructionSet, "bsr", CALL, opcodeList, kindList);
+            add(instructionSet, "rts", RETURN, opcodeList, kindList);
+            add(instructionSet, "rti", RETURN, opcodeList, kindList);
+            opcodes = opcodeList.stream().mapToInt(Integer::intValue).toArray();
+            kinds = new byte[kindList.size()];
+            for (int i = 0; i < kinds.length; i++)
+            {
+                kinds[i] = kindList.get(i);
+            }
+        }
+
+        private static void add(InstructionSet instructionSet, String mnemonic, byte kind, List<Integer> opcodeList,
+                                List<Byte> kindList)
+        {
+            int id = instructionSet.getMnemonicId(mnemonic);
+            for (AddressingMode addressingMode : AddressingMode.values())
+            {
+                if (!instructionSet.supports(id, addressingMode)) continue;
+                opcodeList.add(instructionSet.getOpcode(id, addressingMode));
+                kindList.add(kind);
+            }
+        }
+
+        private byte of(CompiledLine compiledLine)
+        {
+            int opcode = compiledLine.getOpcode();
+            for (int i = 0; i < opcodes.length; i++)
+            {
+                if (opcodes[i] == opcode) return kinds[i];
+            }
+            return compiledLine.getAddressingMode() == AddressingMode.REL ? BRANCH : NEXT;
+        }
+
+        /**
+         * @return true for BRSET and BRCLR, whose offset is their last byte although they are not REL instructions.
+         */
+        private boolean isBitBranch(CompiledLine compiledLine)
+        {
+            int opcode = compiledLine.getOpcode();
+            for (int i = 0; i < bitBranchCount; i++)
+            {
+                if (opcodes[i] == opcode) return true;
+            }
+            return false;
+        }
+    }
+
+    private void readInstructions(List<CompiledLine> compiledLines, List<String> sourceLines, MemoryImage image,
+                                  Flows flowKinds)
+    {
+        Arrays.fill(nodeAt, -1);
+        LineScanner scanner = new LineScanner();
+        String pendingLabel = null;
+        int pendingBound = 0;
+        int node = 0;
+        for (int i = 0; i < compiledLines.size(); i++)
+        {
+            CompiledLine compiledLine = compiledLines.get(i);
+            String sourceLine = i < sourceLines.size() ? sourceLines.get(i) : "";
+            int bound = parseBound(sourceLine);
+            if (compiledLine.isEmpty())
+            {
+                if (scanner.scan(sourceLine) && scanner.startsInLabelColumn() && scanner.getFieldCount() == 1 &&
+                    !scanner.fieldEqualsIgnoreCase(0, "RESET") && pendingLabel == null)
+                    pendingLabel = scanner.getLabel(0);
+                pendingBound = Math.max(pendingBound, bound);
+                continue;
+            }
+            if (!isInstruction(compiledLine))
+            {
+                pendingLabel = null;
+                pendingBound = 0;
+                continue;
+            }
+
+            lines[node] = i;
+            addresses[node] = compiledLine.getAddress();
+            cycles[node] = compiledLine.getCycles();
+            flows[node] = flowKinds.of(compiledLine);
+            labels[node] = pendingLabel;
+            bounds[node] = Math.max(pendingBound, bound);
+            // The assembler rejects code past $FFFF, but a hand-built line list may still hold some
+            if (fitsInMemory(compiledLine)) nodeAt[compiledLine.getAddress()] = node;
+            pendingLabel = null;
+            pendingBound = 0;
+            node++;
+        }
+
+        for (node = 0; node < count; node++)
+        {
+            CompiledLine compiledLine = compiledLines.get(lines[node]);
+            successors1[node] = -1;
+            successors2[node] = -1;
+            callees[node] = -1;
+            if (!fitsInMemory(compiledLine))
+            {
+                penalize(node, "runs past $FFFF");
+                continue;
+            }
+
+            int address = addresses[node];
+            int next = (address + compiledLine.getSizeInBytes()) & (MemoryImage.SIZE - 1);
+            int operandAddress = address + compiledLine.getOpcodeSizeInBytes();
+            boolean relative = compiledLine.getAddressingMode() == AddressingMode.REL ||
+                               flowKinds.isBitBranch(compiledLine);
+            int target = -1;
+            if (compiledLine.getJumpOpcode() != null)
+                target = image.read(next - 2) << 8 | image.read(next - 1);
+            else if (relative)
+                target = (next + (byte) image.read(address + compiledLine.getSizeInBytes() - 1)) &
+                         (MemoryImage.SIZE - 1);
+            else if (compiledLine.getAddressingMode() == AddressingMode.EXT)
+                target = image.read(operandAddress) << 8 | image.read(operandAddress + 1);
+            else if (compiledLine.getAddressingMode() == AddressingMode.DIR) target = image.read(operandAddress);
+
+            switch (flows[node])
+            {
+                case NEXT:
+                    successors1[node] = successor(node, next, "runs past the end of the code");
+                    break;
+                case BRANCH:
+                    successors1[node] = successor(node, next, "runs past the end of the code");
+                    successors2[node] = successor(node, target, "branches outside the code");
+                    break;
+                case ALWAYS:
+                    successors1[node] = successor(node, target, "branches outside the code");
+                    break;
+                case JUMP:
+                    if (target == -1) penalize(node, "jumps to a computed address");
+                    else successors1[node] = successor(node, target, "jumps outside the code");
+                    break;
+                case CALL:
+                    successors1[node] = successor(node, next, "runs past the end of the code");
+                    if (target == -1) penalize(node, "calls a computed address");
+                    else callees[node] = successor(node, target, "calls outside the code");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static boolean fitsInMemory(CompiledLine compiledLine)
+    {
+        return compiledLine.getAddress() >= 0 &&
+               compiledLine.getAddress() + compiledLine.getSizeInBytes() <= MemoryImage.SIZE;
+    }
+
+    /**
+     * @return the number after the first "@bound" in the comment of the line, or 0.
+     */
+    static int parseBound(String line)
+    {
+        int comment = line.indexOf('*');
+        if (comment == -1) return 0;
+        for (int i = comment + 1; i + BOUND_ANNOTATION.length() <= line.length(); i++)
+        {
+            if (!line.regionMatches(true, i, BOUND_ANNOTATION, 0, BOUND_ANNOTATION.length())) continue;
+            int start = i + BOUND_ANNOTATION.length();
+            while (start < line.length() && Character.isWhitespace(line.charAt(start))) start++;
+            int end = start;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) end++;
+            long bound = Assembler.parseNumericLiteral(line, start, end);
+            return bound == Assembler.NOT_A_NUMBER || bound < 1 ? 0 : (int) Math.min(bound, Integer.MAX_VALUE);
+        }
+        return 0;
+    }
+
+    private int successor(int node, int address, String problem)
+    {
+        int successor = nodeAt[address];
+        if (successor == -1) penalize(node, problem);
+        return successor;
+    }
+
+    private void penalize(int node, String problem)
+    {
+        penalties[node] = unbounded(node, problem);
+    }
+
+    private long unbounded(int node, String problem)
+    {
+        causes.add("the instruction at line " + (lines[node] + 1) + " " + problem);
+        return UNBOUNDED + causes.size() - 1;
+    }
+
+    private static boolean isUnbounded(long value)
+    {
+        return value >= UNBOUNDED;
+    }
+
+    private static long plus(long left, long right)
+    {
+        if (left == NEVER_RETURNS || right == NEVER_RETURNS) return NEVER_RETURNS;
+        if (isUnbounded(left)) return left;
+        if (isUnbounded(right)) return right;
+        long sum = left + right;
+        return sum >= UNBOUNDED ? UNBOUNDED : sum;
+    }
+
+    private static long times(long factor, long value)
+    {
+        if (value == NEVER_RETURNS || isUnbounded(value) || factor == 0) return factor == 0 ? 0 : value;
+        if (value > 0 && factor > (UNBOUNDED - 1) / value) return UNBOUNDED;
+        return factor * value;
+    }
+
+    // Loop forest
+
+    /**
+     * Numbers the nodes depth first, then walks them in reverse preorder collapsing every loop into its header with a
+     * union-find, so inner loops are collapsed before the loops that contain them.
+     */
+    private void findLoops()
+    {
+        int[] preorder = new int[count];
+        int[] byPreorder = new int[count];
+        int[] lastDescendant = new int[count];
+        Arrays.fill(preorder, -1);
+
+        int[] stack = new int[count];
+        byte[] edges = new byte[count];
+        // The first instruction, then every call target, then anything left, so loops are entered where the code
+        // enters them
+        int visited = 0;
+        for (int k = -1; k < 2 * count; k++)
+        {
+            int root = k == -1 ? 0 : k < count ? callees[k] : k - count;
+            if (root == -1 || root >= count || preorder[root] != -1) continue;
+            visited = visit(root, preorder, byPreorder, visited, stack, edges, lastDescendant);
+        }
+
+        // Predecessors in compressed rows
+        int[] predecessorStarts = new int[count + 1];
+        for (int node = 0; node < count; node++)
+        {
+            if (successors1[node] != -1) predecessorStarts[successors1[node] + 1]++;
+            if (successors2[node] != -1) predecessorStarts[successors2[node] + 1]++;
+        }
+        for (int node = 0; node < count; node++)
+        {
+            predecessorStarts[node + 1] += predecessorStarts[node];
+        }
+        int[] predecessors = new int[predecessorStarts[count]];
+        int[] fill = Arrays.copyOf(predecessorStarts, count);
+        for (int node = 0; node < count; node++)
+        {
+            if (successors1[node] != -1) predecessors[fill[successors1[node]]++] = node;
+            if (successors2[node] != -1) predecessors[fill[successors2[node]]++] = node;
+        }
+
+        int[] unionFind = new int[count];
+        int[] marks = new int[count];
+        int[] worklist = new int[count];
+        Arrays.fill(loopParents, -1);
+        Arrays.fill(marks, -1);
+        for (int node = 0; node < count; node++)
+        {
+            unionFind[node] = node;
+        }
+        for (int k = count - 1; k >= 0; k--)
+        {
+            int header = byPreorder[k];
+            int size = 0;
+            boolean selfLoop = false;
+            marks[header] = header;
+            for (int p = predecessorStarts[header]; p < predecessorStarts[header + 1]; p++)
+            {
+                int latch = predecessors[p];
+                if (!isAncestor(header, latch, preorder, lastDescendant)) continue;
+                if (latch == header)
+                {
+                    selfLoop = true;
+                    continue;
+                }
+                int representative = find(unionFind, latch);
+                if (marks[representative] == header) continue;
+                marks[representative] = header;
+                worklist[size++] = representative;
+                loopBounds[header] = Math.max(loopBounds[header], bounds[latch]);
+            }
+            if (size == 0 && !selfLoop) continue;
+
+            headers[header] = true;
+            loopBounds[header] = Math.max(loopBounds[header], bounds[header]);
+            for (int w = 0; w < size; w++)
+            {
+                int member = worklist[w];
+                for (int p = predecessorStarts[member]; p < predecessorStarts[member + 1]; p++)
+                {
+                    int predecessor = predecessors[p];
+                    if (!isAncestor(header, predecessor, preorder, lastDescendant))
+                    {
+                        // Entered from outside without going through the header
+                        irreducible[header] = true;
+                        continue;
+                    }
+                    int representative = find(unionFind, predecessor);
+                    if (representative == header || marks[representative] == header) continue;
+                    marks[representative] = header;
+                    worklist[size++] = representative;
+                }
+            }
+            for (int w = 0; w < size; w++)
+            {
+                loopParents[worklist[w]] = header;
+                unionFind[worklist[w]] = header;
+            }
+        }
+
+        // A loop header precedes its members in preorder
+        for (int k = 0; k < count; k++)
+        {
+            int node = byPreorder[k];
+            tops[node] = loopParents[node] == -1 ? node : tops[loopParents[node]];
+        }
+    }
+
+    /**
+     * Iterative depth-first search from {@code start} along the successors, recording preorder numbers, the last
+     * preorder number below each node and the reverse postorder.
+     *
+     * @return the number of nodes visited so far.
+     */
+    private int visit(int start, int[] preorder, int[] byPreorder, int visited, int[] stack, byte[] edges,
+                      int[] lastDescendant)
+    {
+        int depth = 0;
+        preorder[start] = visited;
+        byPreorder[visited++] = start;
+        stack[depth] = start;
+        edges[depth++] = 0;
+        while (depth > 0)
+        {
+            int node = stack[depth - 1];
+            int edge = edges[depth - 1]++;
+            if (edge < 2)
+            {
+                int successor = edge == 0 ? successors1[node] : successors2[node];
+                if (successor == -1 || preorder[successor] != -1) continue;
+                preorder[successor] = visited;
+                byPreorder[visited++] = successor;
+                stack[depth] = successor;
+                edges[depth++] = 0;
+                continue;
+            }
+            depth--;
+            lastDescendant[node] = visited - 1;
+            reversePostorder[count - 1 - postorderCount++] = node;
+        }
+        return visited;
+    }
+
+    private static boolean isAncestor(int ancestor, int node, int[] preorder, int[] lastDescendant)
+    {
+        return preorder[ancestor] <= preorder[node] && preorder[node] <= lastDescendant[ancestor];
+    }
+
+    private static int find(int[] unionFind, int node)
+    {
+        int root = node;
+        while (unionFind[root] != root) root = unionFind[root];
+        while (unionFind[node] != root)
+        {
+            int next = unionFind[node];
+            unionFind[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    // Costs
+
+    /**
+     * Evaluates every unit after the units it can continue into or call, with an iterative depth-first search over
+     * both kinds of edges. Only calls can close a cycle, and a call that does is recursive.
+     */
+    private void computeWorstCases()
+    {
+        // Members of each unit, in reverse postorder, in compressed rows
+        int[] unitStarts = new int[count + 1];
+        for (int node = 0; node < count; node++)
+        {
+            unitStarts[tops[node] + 1]++;
+        }
+        for (int node = 0; node < count; node++)
+        {
+            unitStarts[node + 1] += unitStarts[node];
+        }
+        int[] unitMembers = new int[count];
+        int[] fill = Arrays.copyOf(unitStarts, count);
+        for (int node : reversePostorder)
+        {
+            unitMembers[fill[tops[node]]++] = node;
+        }
+
+        // Members of each loop, header excluded, in reverse postorder
+        int[] loopStarts = new int[count + 1];
+        for (int node = 0; node < count; node++)
+        {
+            if (loopParents[node] != -1) loopStarts[loopParents[node] + 1]++;
+        }
+        for (int node = 0; node < count; node++)
+        {
+            loopStarts[node + 1] += loopStarts[node];
+        }
+        int[] loopMembers = new int[loopStarts[count]];
+        fill = Arrays.copyOf(loopStarts, count);
+        for (int node : reversePostorder)
+        {
+            if (loopParents[node] != -1) loopMembers[fill[loopParents[node]]++] = node;
+        }
+
+        Arrays.fill(arrivals, NEVER_RETURNS);
+        int[] stack = new int[count];
+        int[] cursors = new int[count];
+        for (int root = 0; root < count; root++)
+        {
+            if (tops[root] != root || states[root] != WHITE) continue;
+            int depth = 0;
+            stack[depth++] = root;
+            states[root] = GRAY;
+            while (depth > 0)
+            {
+                int unit = stack[depth - 1];
+                int cursor = cursors[unit]++;
+                int memberCount = unitStarts[unit + 1] - unitStarts[unit];
+                if (cursor < 3 * memberCount)
+                {
+                    int member = unitMembers[unitStarts[unit] + cursor / 3];
+                    int dependency = cursor % 3 == 0 ? successors1[member] :
+                                     cursor % 3 == 1 ? successors2[member] : callees[member];
+                    if (dependency == -1) continue;
+                    dependency = tops[dependency];
+                    if (dependency == unit || states[dependency] != WHITE) continue;
+                    states[dependency] = GRAY;
+                    stack[depth++] = dependency;
+                    continue;
+                }
+                depth--;
+                if (headers[unit])
+                {
+                    summarize(unit, loopStarts, loopMembers);
+                    worstCases[unit] = exitLoop(unit, summaries[unit]);
+                }
+                else worstCases[unit] = plus(cost(unit), continuation(unit));
+                states[unit] = BLACK;
+            }
+        }
+    }
+
+    /**
+     * Worst case of an outermost loop: its repeated iterations, then its most expensive way to a return.
+     */
+    private long exitLoop(int header, LoopSummary summary)
+    {
+        long best = summary.toReturn;
+        for (int i = 0; i < summary.exitCount; i++)
+        {
+            best = Math.max(best, plus(summary.exitCosts[i], entry(summary.exitTargets[i], header, false)));
+        }
+        return plus(repetitions(header), best);
+    }
+
+    /**
+     * Worst case after a node outside every loop, through whichever successor costs the most.
+     */
+    private long continuation(int node)
+    {
+        if (isExit(node)) return 0;
+        long best = NEVER_RETURNS;
+        if (successors1[node] != -1) best = Math.max(best, entry(successors1[node], node, false));
+        if (successors2[node] != -1) best = Math.max(best, entry(successors2[node], node, false));
+        return best;
+    }
+
+    /**
+     * Returns, and instructions whose target is unknown or outside the code, which could go on to return with any cost
+     * and so end every path through them with their unbounded penalty.
+     */
+    private boolean isExit(int node)
+    {
+        return flows[node] == RETURN || penalties[node] != 0;
+    }
+
+    /**
+     * The cycles of a node, with the worst case of the subroutine it calls.
+     */
+    private long cost(int node)
+    {
+        long cost = plus(cycles[node], penalties[node]);
+        if (callees[node] != -1) cost = plus(cost, entry(callees[node], node, true));
+        return cost;
+    }
+
+    /**
+     * Worst case from {@code target}, which must be a unit that has been evaluated.
+     */
+    private long entry(int target, int from, boolean call)
+    {
+        if (tops[target] != target)
+            return unbounded(from, (call ? "calls" : "jumps") + " into the loop at line " +
+                                   (lines[tops[target]] + 1) + " past its start");
+        if (states[target] != BLACK) return unbounded(from, "makes a recursive call");
+        return worstCases[target];
+    }
+
+    /**
+     * Cost of going round a loop as many times as its bound allows, save the last time through.
+     */
+    private long repetitions(int header)
+    {
+        if (irreducible[header]) return unbounded(header, "starts a loop that is also entered past its start");
+        if (loopBounds[header] == 0) return unbounded(header, "starts a loop without a " + BOUND_ANNOTATION);
+        return times(loopBounds[header] - 1, summaries[header].iteration);
+    }
+
+    /**
+     * Longest paths from the header of a loop through its members, in reverse postorder, which is a topological order
+     * once the edges back to the header are left out. Inner loops were summarized first and count as single nodes.
+     */
+    private void summarize(int header, int[] loopStarts, int[] loopMembers)
+    {
+        for (int m = loopStarts[header]; m < loopStarts[header + 1]; m++)
+        {
+            if (headers[loopMembers[m]]) summarize(loopMembers[m], loopStarts, loopMembers);
+        }
+
+        LoopSummary summary = new LoopSummary();
+        summaries[header] = summary;
+        long headerCost = cost(header);
+        if (isExit(header)) summary.toReturn = headerCost;
+        leave(header, headerCost, successors1[header], summary);
+        leave(header, headerCost, successors2[header], summary);
+
+        for (int m = loopStarts[header]; m < loopStarts[header + 1]; m++)
+        {
+            int member = loopMembers[m];
+            long arrival = arrivals[member];
+            if (arrival == NEVER_RETURNS) continue;
+            if (headers[member])
+            {
+                LoopSummary inner = summaries[member];
+                long base = plus(arrival, repetitions(member));
+                summary.toReturn = Math.max(summary.toReturn, plus(base, inner.toReturn));
+                for (int i = 0; i < inner.exitCount; i++)
+                {
+                    leave(header, plus(base, inner.exitCosts[i]), inner.exitTargets[i], summary);
+                }
+                continue;
+            }
+            long path = plus(arrival, cost(member));
+            if (isExit(member)) summary.toReturn = Math.max(summary.toReturn, path);
+            leave(header, path, successors1[member], summary);
+            leave(header, path, successors2[member], summary);
+        }
+    }
+
+    /**
+     * Follows an edge of a loop body that has cost {@code path} so far: back to the header, on to a member or out.
+     */
+    private void leave(int header, long path, int target, LoopSummary summary)
+    {
+        if (target == -1 || path == NEVER_RETURNS) return;
+        if (target == header)
+        {
+            summary.iteration = Math.max(summary.iteration, path);
+            return;
+        }
+        int member = target;
+        while (loopParents[member] != header)
+        {
+            member = loopParents[member];
+            if (member == -1)
+            {
+                summary.addExit(path, target);
+                return;
+            }
+        }
+        if (member != target)
+            path = plus(path, unbounded(member, "starts a loop that is also entered past its start"));
+        arrivals[member] = Math.max(arrivals[member], path);
+    }
+
+    // Results
+
+    private void collectResults()
+    {
+        boolean[] called = new boolean[count];
+        for (int node = 0; node < count; node++)
+        {
+            if (callees[node] != -1) called[callees[node]] = true;
+        }
+        for (int node = 0; node < count; node++)
+        {
+            if (called[node])
+            {
+                long worstCase = tops[node] == node ? worstCases[node] :
+                                 unbounded(node, "is called inside the loop at line " + (lines[tops[node]] + 1));
+                subroutines.add(new Subroutine(name(node), addresses[node], lines[node] + 1,
+                                               isUnbounded(worstCase) ? -1 : worstCase, reason(worstCase)));
+            }
+            if (headers[node])
+            {
+                long iteration = summaries[node] == null ? NEVER_RETURNS : summaries[node].iteration;
+                loops.add(new Loop(name(node), addresses[node], lines[node] + 1, loopBounds[node],
+                                   isUnbounded(iteration) ? -1 : iteration));
+            }
+        }
+    }
+
+    private String name(int node)
+    {
+        if (labels[node] != null) return labels[node];
+        StringBuilder name = new StringBuilder("$");
+        return Hex.append(name, addresses[node], 2).toString();
+    }
+
+    private String reason(long worstCase)
+    {
+        if (!isUnbounded(worstCase)) return null;
+        return causes.get((int) (worstCase - UNBOUNDED));
+    }
+
+    /**
+     * Called subroutines in address order.
+     */
+    public List<Subroutine> getSubroutines()
+    {
+        return Collections.unmodifiableList(subroutines);
+    }
+
+    /**
+     * Loops in address order.
+     */
+    public List<Loop> getLoops()
+    {
+        return Collections.unmodifiableList(loops);
+    }
+
+    public String toReport()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Worst-case execution time in bus cycles%n%n"));
+        report.append(String.format("%-16s %-7s %6s %12s%n", "Subroutine", "Address", "Line", "Cycles"));
+        for (Subroutine subroutine : subroutines)
+        {
+            String cycles = subroutine.getReason() != null ? "unbounded" :
+                            subroutine.getCycles() == NEVER_RETURNS ? "never returns" :
+                            Long.toString(subroutine.getCycles());
+            report.append(String.format("%-16s $%04X   %6d %12s", subroutine.getName(), subroutine.getAddress(),
+                                        subroutine.getLine(), cycles));
+            if (subroutine.getReason() != null) report.append(": ").append(subroutine.getReason());
+            report.append(System.lineSeparator());
+        }
+        if (subroutines.isEmpty()) report.append(String.format("No subroutines are called%n"));
+
+        if (loops.isEmpty()) return report.toString();
+        report.append(String.format("%n%-16s %-7s %6s %8s %12s%n", "Loop", "Address", "Line", "Bound", "Iteration"));
+        for (Loop loop : loops)
+        {
+            report.append(String.format("%-16s $%04X   %6d %8s %12s%n", loop.getName(), loop.getAddress(),
+                                        loop.getLine(), loop.getBound() == 0 ? "-" : Integer.toString(loop.getBound()),
+                                        loop.getIterationCycles() == -1 ? "unbounded" :
+                                        Long.toString(loop.getIterationCycles())));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package eypdc.assembler;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the compiled lines and writes the {@link WcetAnalysis} of the whole program once they are all known.
+ */
+class WcetSink implements OutputSink
+{
+    private final PrintWriter printer;
+    private final MemoryImage image;
+
+    private final List<CompiledLine> compiledLines = new ArrayList<>();
+    private final List<String> originalLines = new ArrayList<>();
+
+    WcetSink(PrintWriter printer, MemoryImage image)
+    {
+        this.printer = printer;
+        this.image = image;
+    }
+
+    @Override
+    public void line(int lineNumber, String originalLine, CompiledLine compiledLine)
+    {
+        compiledLines.add(compiledLine);
+        originalLines.add(originalLine);
+    }
+
+    /**
+     * A program the analysis cannot handle gets a note in its report instead of an exception that would leave the
+     * outputs closed after this one unwritten.
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            WcetAnalysis analysis = new WcetAnalysis(compiledLines, originalLines, image, InstructionSet.getInstance());
+            printer.print(analysis.toReport());
+        }
+        catch (RuntimeException e)
+        {
+            printer.println("Worst-case execution time analysis failed: " + e);
+        }
+        finally
+        {
+            printer.close();
+        }
+    }
+}
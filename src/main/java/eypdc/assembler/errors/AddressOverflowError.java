@@ -0,0 +1,9 @@
+package eypdc.assembler.errors;
+
+public class AddressOverflowError extends CompileError
+{
+    public AddressOverflowError(int errorOffset)
+    {
+        super("El codigo excede la direccion $FFFF", errorOffset, 22);
+    }
+}
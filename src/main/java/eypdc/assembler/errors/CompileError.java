@@ -2,10 +2,34 @@ package eypdc.assembler.errors;
 
 import java.text.ParseException;
 
+/**
+ * Base of every assembly error. Errors are part of the normal flow of assembling bad sources, so they carry no stack
+ * trace and only build their full message when it is asked for.
+ */
 public class CompileError extends ParseException
 {
+    private final int errorCode;
+
     public CompileError(String message, int errorOffset, int errorCode)
     {
-        super("Error " + errorCode + ": " + message + " (Linea " + (errorOffset + 1) + ")", errorOffset);
+        super(message, errorOffset);
+        this.errorCode = errorCode;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        return "Error " + errorCode + ": " + super.getMessage() + " (Linea " + (getErrorOffset() + 1) + ")";
+    }
+
+    public int getErrorCode()
+    {
+        return errorCode;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
     }
 }
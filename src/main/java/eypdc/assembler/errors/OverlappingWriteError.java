@@ -0,0 +1,15 @@
+package eypdc.assembler.errors;
+
+import eypdc.assembler.Util;
+
+public class OverlappingWriteError extends CompileError
+{
+    /**
+     * @param previousLine zero-based line that wrote {@code address} first.
+     */
+    public OverlappingWriteError(int errorOffset, int address, int previousLine)
+    {
+        super("La direccion $" + Util.getHexRepresentation(address, 2) + " ya fue ocupada por la linea " +
+              (previousLine + 1), errorOffset, 21);
+    }
+}
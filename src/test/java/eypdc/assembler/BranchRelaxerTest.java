@@ -0,0 +1,121 @@
+package eypdc.assembler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BranchRelaxerTest
+{
+    private final Assembler assembler = new Assembler();
+
+    @Test
+    void keepsBranchesThatReach()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        BNE CERCA",
+                "        BSR CERCA",
+                "CERCA",
+                "        RTS",
+                "        END");
+        assertArrayEquals(bytes(0x26, 0x02, 0x8D, 0x00), result.readBytes(0x8000, 4));
+        assertEquals(0x8004, result.getLabels().get("CERCA"));
+    }
+
+    @Test
+    void invertsFarConditionalBranchOverJmp()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        BNE LEJOS",
+                "        ORG $8100",
+                "LEJOS",
+                "        RTS",
+                "        END");
+        // BEQ *+5; JMP LEJOS
+        assertArrayEquals(bytes(0x27, 0x03, 0x7E, 0x81, 0x00), result.readBytes(0x8000, 5));
+    }
+
+    @Test
+    void turnsFarBraAndBsrIntoJmpAndJsr()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        BRA LEJOS",
+                "        BSR LEJOS",
+                "        ORG $8100",
+                "LEJOS",
+                "        RTS",
+                "        END");
+        assertArrayEquals(bytes(0x7E, 0x81, 0x00, 0xBD, 0x81, 0x00), result.readBytes(0x8000, 6));
+    }
+
+    @Test
+    void invertsFarBitBranchOverJmp()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        BRSET $40,#$01 LEJOS",
+                "        BRCLR 5,X,#$02 LEJOS",
+                "        ORG $8100",
+                "LEJOS",
+                "        RTS",
+                "        END");
+        // BRCLR $40,#$01 *+7; JMP LEJOS; BRSET 5,X,#$02 *+7; JMP LEJOS
+        assertArrayEquals(bytes(0x13, 0x40, 0x01, 0x03, 0x7E, 0x81, 0x00,
+                                0x1E, 0x05, 0x02, 0x03, 0x7E, 0x81, 0x00), result.readBytes(0x8000, 14));
+    }
+
+    @Test
+    void callsFarPageZeroLabelWithDirectJsr()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $0010",
+                "CERO",
+                "        RTS",
+                "        ORG $8000",
+                "        BSR CERO",
+                "        RTS",
+                "        END");
+        assertArrayEquals(bytes(0x9D, 0x10, 0x39), result.readBytes(0x8000, 3));
+        assertTrue(result.getCompiledLines().get(4).isRelaxed());
+    }
+
+    @Test
+    void relaxesBranchPushedOutOfReachByAnotherRelaxation()
+    {
+        // The BRA reaches LEJOS, 127 bytes on, only while the BNE after it stays two bytes long
+        List<String> lines = new ArrayList<>(List.of("        ORG $8000", "        BRA LEJOS", "        BNE LEJOS2"));
+        lines.addAll(Collections.nCopies(125, "        FCB $01"));
+        lines.addAll(List.of("LEJOS", "        RTS", "        ORG $9000", "LEJOS2", "        RTS", "        END"));
+        AssemblyResult result = assembler.assemble(lines, false);
+        assertTrue(result.isSuccessful(), () -> result.getDiagnostics().toString());
+
+        // JMP LEJOS; BEQ *+5; JMP LEJOS2
+        assertArrayEquals(bytes(0x7E, 0x80, 0x85, 0x27, 0x03, 0x7E, 0x90, 0x00), result.readBytes(0x8000, 8));
+        assertEquals(0x8085, result.getLabels().get("LEJOS"));
+    }
+
+    private AssemblyResult assemble(String... lines)
+    {
+        AssemblyResult result = assembler.assemble(List.of(lines), false);
+        assertTrue(result.isSuccessful(), () -> result.getDiagnostics().toString());
+        return result;
+    }
+
+    static byte[] bytes(int... values)
+    {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
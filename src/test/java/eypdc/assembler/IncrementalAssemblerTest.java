@@ -0,0 +1,195 @@
+package eypdc.assembler;
+
+import eypdc.assembler.errors.CompileError;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Edits a program at random and checks after every edit that the incremental assembler produces what a full assembly
+ * of the same source does: the same error, or the same lines, memory image and labels.
+ */
+class IncrementalAssemblerTest
+{
+    private static final int EDITS = 1500;
+
+    // Lines an edit may insert besides those of the program itself: constants that change value, labels defined once
+    // or twice, branches and calls that may or may not reach, to page zero too, and new segments
+    private static final String[] INSERTIONS = {
+            "K EQU $10", "K EQU $2000", "ZP EQU $40", "ZP EQU $80", "L3", "L5", "X1", "        BRA X1",
+            "        JMP X1", "        BNE L3", "        BSR SUBZ", "        BSR SUB", "        BSR LEJOS",
+            "        BEQ INICIO", "        ORG $9000", "        ORG $8000", "        ORG $0020", "        LDAA K",
+            "        LDAA #K", "        NOP", "        FCB $01,$02", "", "   ", "        BSET ZP,#$01",
+            "        BRSET ZP,#$01 L5", "        BRCLR 5,X,#$02 LEJOS", "        JSR X1", "        LDX K,X",
+            "        LDAA $1234", "* comment"};
+
+    private final Assembler assembler = new Assembler();
+
+    @ParameterizedTest
+    @CsvSource({"near.asc, 1", "near.asc, 2", "near.asc, 3", "far.asc, 1", "far.asc, 2", "far.asc, 3"})
+    void matchesFullAssemblyAfterRandomEdits(String program, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        List<String> original = readProgram(program);
+        List<String> pool = new ArrayList<>(original);
+        pool.addAll(List.of(INSERTIONS));
+
+        IncrementalAssembler incrementalAssembler = new IncrementalAssembler(assembler);
+        List<String> source = new ArrayList<>(original);
+        List<String> lastAssembled = source;
+        int assembled = 0;
+        for (int edit = 0; edit < EDITS; edit++)
+        {
+            if (edit > 0) edit(source, random, pool);
+            int editNumber = edit;
+            Supplier<String> context = () -> program + ", seed " + seed + ", edit " + editNumber;
+
+            if (compare(incrementalAssembler, source, context))
+            {
+                lastAssembled = new ArrayList<>(source);
+                assembled++;
+            }
+            // Most random edits break the program; going back keeps the following ones on a program that assembles
+            else source = new ArrayList<>(lastAssembled);
+        }
+        assertTrue(assembled > EDITS / 4, "Too few edits assembled to test anything: " + assembled);
+    }
+
+    @Test
+    void restoresRelaxedBranchesOnceTheyReachAgain()
+    {
+        IncrementalAssembler incrementalAssembler = new IncrementalAssembler(assembler);
+        List<String> source = new ArrayList<>(List.of(
+                "        ORG $0010",
+                "CERO",
+                "        RTS",
+                "        ORG $8000",
+                "        BNE LEJOS",
+                "        BSR LEJOS",
+                "        BSR CERO",
+                "        ORG $8100",
+                "LEJOS",
+                "        RTS",
+                "        END"));
+        assertTrue(compare(incrementalAssembler, source, () -> "far"));
+        assertEquals(5, incrementalAssembler.getCompiledLines().get(4).getSizeInBytes());
+
+        source.set(7, "        ORG $8010");
+        assertTrue(compare(incrementalAssembler, source, () -> "near"));
+        assertEquals(2, incrementalAssembler.getCompiledLines().get(4).getSizeInBytes());
+        assertEquals(2, incrementalAssembler.getCompiledLines().get(5).getSizeInBytes());
+
+        source.set(7, "        ORG $8200");
+        assertTrue(compare(incrementalAssembler, source, () -> "far again"));
+        // A BSR to page zero stays a direct JSR whatever happens around it
+        assertEquals(2, incrementalAssembler.getCompiledLines().get(6).getSizeInBytes());
+    }
+
+    /**
+     * @return whether the source assembled.
+     */
+    private boolean compare(IncrementalAssembler incrementalAssembler, List<String> source, Supplier<String> context)
+    {
+        AssemblyResult expected = assembler.assemble(source, false);
+        String error = null;
+        try
+        {
+            incrementalAssembler.update(new ArrayList<>(source));
+        }
+        catch (CompileError compileError)
+        {
+            error = compileError.getMessage();
+        }
+
+        if (!expected.isSuccessful())
+        {
+            assertEquals(expected.getDiagnostics().get(0).getMessage(), error, context);
+            return false;
+        }
+        assertNull(error, context);
+
+        List<CompiledLine> expectedLines = expected.getCompiledLines();
+        List<CompiledLine> compiledLines = incrementalAssembler.getCompiledLines();
+        assertEquals(expectedLines.size(), compiledLines.size(), context);
+        for (int i = 0; i < expectedLines.size(); i++)
+        {
+            int line = i;
+            assertEquals(describe(expectedLines.get(i)), describe(compiledLines.get(i)),
+                         () -> context.get() + ", line " + line + ": " + source.get(line));
+        }
+
+        MemoryImage image = incrementalAssembler.getImage();
+        for (int address = 0; address < MemoryImage.SIZE; address++)
+        {
+            if (expected.isOccupied(address) != image.isOccupied(address) ||
+                expected.read(address) != image.read(address))
+                fail(context.get() + ", address " + Integer.toHexString(address));
+        }
+        assertEquals(expected.getLabels(), incrementalAssembler.getLabels(), context);
+        return true;
+    }
+
+    private static void edit(List<String> source, Random random, List<String> pool)
+    {
+        int position = random.nextInt(source.size() + 1);
+        String text = pool.get(random.nextInt(pool.size()));
+        switch (random.nextInt(4))
+        {
+            case 0:
+                if (position < source.size()) source.remove(position);
+                break;
+            case 1:
+                source.add(position, text);
+                break;
+            case 2:
+                if (position < source.size()) source.set(position, text);
+                break;
+            default:
+                // Move a block of lines, which the incremental assembler reuses instead of parsing them again
+                if (source.size() <= 10) break;
+                int from = random.nextInt(source.size() - 5);
+                List<String> block = source.subList(from, from + 1 + random.nextInt(5));
+                List<String> moved = new ArrayList<>(block);
+                block.clear();
+                source.addAll(random.nextInt(source.size() + 1), moved);
+                break;
+        }
+    }
+
+    private static String describe(CompiledLine compiledLine)
+    {
+        StringBuilder description = new StringBuilder()
+                .append(compiledLine.getAddress()).append(' ')
+                .append(compiledLine.getOpcode()).append(' ')
+                .append(compiledLine.getSizeInBytes());
+        for (int i = 0; i < compiledLine.getOperandCount(); i++)
+        {
+            description.append(' ').append(compiledLine.getOperand(i));
+        }
+        return description.toString();
+    }
+
+    static List<String> readProgram(String name) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                IncrementalAssemblerTest.class.getResourceAsStream(name), Charset.forName("windows-1252"))))
+        {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package eypdc.assembler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static eypdc.assembler.BranchRelaxerTest.bytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeepholeTest
+{
+    private final Assembler assembler = new Assembler(InstructionSet.getInstance(), true);
+
+    @Test
+    void clearsRegisterWhenTheCarryIsSetBeforeItIsRead()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        LDAA #0",
+                "        ADDB #1",
+                "        ADCA #1",
+                "        END");
+        assertArrayEquals(bytes(0x4F, 0xCB, 0x01, 0x89, 0x01), result.readBytes(0x8000, 5));
+        assertEquals("CLRA", result.getCompiledLines().get(1).getRewrite());
+    }
+
+    @Test
+    void keepsLoadWhoseCarryIsRead()
+    {
+        // CLRB would clear the carry that ADCA adds in
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        LDAB #0",
+                "        ADCA #1",
+                "        END");
+        assertArrayEquals(bytes(0xC6, 0x00, 0x89, 0x01), result.readBytes(0x8000, 4));
+        assertNull(result.getCompiledLines().get(1).getRewrite());
+    }
+
+    @Test
+    void keepsLoadFollowedByABranch()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "FIN",
+                "        LDAA #0",
+                "        BCS FIN",
+                "        END");
+        assertArrayEquals(bytes(0x86, 0x00), result.readBytes(0x8000, 2));
+    }
+
+    @Test
+    void turnsCallFollowedByReturnIntoJump()
+    {
+        AssemblyResult result = assemble(
+                "        ORG $8000",
+                "        JSR $9000",
+                "        RTS",
+                "        END");
+        assertArrayEquals(bytes(0x7E, 0x90, 0x00), result.readBytes(0x8000, 3));
+        assertEquals(Peephole.REMOVED, result.getCompiledLines().get(2).getRewrite());
+        assertTrue(!result.isOccupied(0x8003));
+    }
+
+    private AssemblyResult assemble(String... lines)
+    {
+        AssemblyResult result = assembler.assemble(List.of(lines), false);
+        assertTrue(result.isSuccessful(), () -> result.getDiagnostics().toString());
+        return result;
+    }
+}